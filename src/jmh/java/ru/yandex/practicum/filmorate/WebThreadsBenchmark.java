@@ -0,0 +1,123 @@
+package ru.yandex.practicum.filmorate;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк HTTP-запросов с блокирующим JDBC при обработке запросов в потоках платформы и в виртуальных потоках.
+ * Приложение запускается на случайном порту с базой H2 в памяти и заполняется users пользователями
+ * (friendsPerUser друзей у каждого) и films фильмами с лайками, seed фиксирован.
+ * Режим SampleTime дает распределение задержек (p99), Throughput - пропускную способность при 64 клиентах.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(64)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class WebThreadsBenchmark {
+    private static final long SEED = 42L;
+    private static final int POPULAR_SIZE = 10;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"1000"})
+    public int users;
+
+    @Param({"1000"})
+    public int films;
+
+    @Param({"20"})
+    public int friendsPerUser;
+
+    private ServletWebServerApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(FilmorateApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:filmorate-bench;DB_CLOSE_DELAY=-1",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "logging.level.root=WARN",
+                        "logging.level.org.zalando.logbook=OFF")
+                .run();
+        baseUrl = "http://localhost:" + context.getWebServer().getPort();
+        client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        UserService userService = context.getBean(UserService.class);
+        FilmService filmService = context.getBean(FilmService.class);
+        Random random = new Random(SEED);
+        for (int i = 1; i <= users; i++) {
+            userService.addUser(User.of(null, "User " + i, "user" + i + "@mail.ru", "user" + i,
+                    LocalDate.of(1990, 1, 1)));
+        }
+        for (int i = 1; i <= films; i++) {
+            filmService.addFilm(Film.of(null, "Film " + i, "Description " + i, LocalDate.of(2000, 1, 1),
+                    120, null, null));
+        }
+        for (long userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < friendsPerUser; i++) {
+                long otherId = 1L + random.nextInt(users);
+                if (otherId != userId) {
+                    userService.addFriend(userId, otherId);
+                }
+                filmService.addLike(1L + random.nextInt(films), userId);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int popularFilms() throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/films/popular?count=" + POPULAR_SIZE)).GET());
+    }
+
+    @Benchmark
+    public int userFriends() throws Exception {
+        long userId = 1L + ThreadLocalRandom.current().nextInt(users);
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/users/" + userId + "/friends")).GET());
+    }
+
+    @Benchmark
+    public int addLike() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long filmId = 1L + random.nextInt(films);
+        long userId = 1L + random.nextInt(users);
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/films/" + filmId + "/like/" + userId))
+                .PUT(HttpRequest.BodyPublishers.noBody()));
+    }
+
+    private int send(HttpRequest.Builder request) throws Exception {
+        HttpResponse<Void> response = client.send(request.build(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+}
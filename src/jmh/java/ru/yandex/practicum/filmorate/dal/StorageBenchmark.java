@@ -0,0 +1,219 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.index.FilmLikesLeaderboard;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк запросов FilmDbStorage, UserDbStorage и UserService к базе H2 в памяти.
+ * База заполняется films фильмами (0-2 жанра), users пользователями, likesPerUser лайками на пользователя
+ * (популярность фильмов по закону Ципфа) и в среднем friendsPerUser друзьями на пользователя.
+ * friendDegree: uniform - у всех пользователей одинаковое количество друзей,
+ * zipf - количество друзей убывает по закону Ципфа от пользователя с ID 1 при том же среднем.
+ * Данные и последовательность запрашиваемых ID зависят только от параметров и фиксированного seed,
+ * поэтому результаты (target/jmh-result.json) сравнимы между коммитами.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class StorageBenchmark {
+    private static final long SEED = 42L;
+    private static final int BATCH_SIZE = 1000;
+    private static final int GENRES_COUNT = 6;
+    private static final int MPA_RATINGS_COUNT = 5;
+    private static final int TOP_SIZE = 10;
+
+    @Param({"10000"})
+    public int films;
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"20"})
+    public int likesPerUser;
+
+    @Param({"20"})
+    public int friendsPerUser;
+
+    @Param({"uniform", "zipf"})
+    public String friendDegree;
+
+    @Param({"true"})
+    public boolean friendGraph;
+
+    private ConfigurableApplicationContext context;
+    private FilmDbStorage filmDbStorage;
+    private UserDbStorage userDbStorage;
+    private UserService userService;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:filmorate-storage-bench;DB_CLOSE_DELAY=-1",
+                        "filmorate.friend-graph.enabled=" + friendGraph,
+                        "logging.level.root=WARN")
+                .run();
+        filmDbStorage = context.getBean(FilmDbStorage.class);
+        userDbStorage = context.getBean(UserDbStorage.class);
+        userService = context.getBean(UserService.class);
+
+        seed(context.getBean(JdbcTemplate.class), new Random(SEED));
+        // индексы в памяти заполнялись при старте по пустой базе
+        context.getBean(FilmLikesLeaderboard.class).load();
+        context.getBeanProvider(FriendGraph.class).ifAvailable(FriendGraph::load);
+        random = new SplittableRandom(SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Film> getTopFilms() {
+        return filmDbStorage.getTopFilms(TOP_SIZE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public List<Film> getAllFilms() {
+        return filmDbStorage.getAllFilms();
+    }
+
+    @Benchmark
+    public Film getFilmById() {
+        return filmDbStorage.getFilmById(nextFilmId());
+    }
+
+    @Benchmark
+    public boolean addLike() {
+        return filmDbStorage.addLike(nextFilmId(), nextUserId());
+    }
+
+    @Benchmark
+    public List<User> getAllFriendsById() {
+        return userDbStorage.getAllFriendsById(nextUserId());
+    }
+
+    @Benchmark
+    public Set<Long> getUserFriendsIdsById() {
+        return userDbStorage.getUserFriendsIdsById(nextUserId());
+    }
+
+    @Benchmark
+    public List<User> getAllCommonFriendsByIds() {
+        return userService.getAllCommonFriendsByIds(nextUserId(), nextUserId());
+    }
+
+    private long nextFilmId() {
+        return 1L + random.nextInt(films);
+    }
+
+    private long nextUserId() {
+        return 1L + random.nextInt(users);
+    }
+
+    private void seed(JdbcTemplate jdbc, Random seedRandom) {
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= films; i++) {
+            rows.add(new Object[]{"Film " + i, "Description " + i, Date.valueOf(LocalDate.of(2000, 1, 1)),
+                    90 + seedRandom.nextInt(90), 1 + seedRandom.nextInt(MPA_RATINGS_COUNT)});
+            flush(jdbc, "INSERT INTO films (name, description, release_date, duration, mpa_rating_id) "
+                    + "VALUES (?, ?, ?, ?, ?)", rows, i == films);
+        }
+        for (int i = 1; i <= films; i++) {
+            int genresCount = seedRandom.nextInt(3);
+            int firstGenreId = 1 + seedRandom.nextInt(GENRES_COUNT);
+            for (int g = 0; g < genresCount; g++) {
+                rows.add(new Object[]{(long) i, 1 + (firstGenreId + g) % GENRES_COUNT});
+            }
+            flush(jdbc, "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", rows, i == films);
+        }
+        for (int i = 1; i <= users; i++) {
+            rows.add(new Object[]{"User " + i, "user" + i + "@mail.ru", "user" + i,
+                    Date.valueOf(LocalDate.of(1990, 1, 1))});
+            flush(jdbc, "INSERT INTO users (name, email, login, birthday) VALUES (?, ?, ?, ?)", rows, i == users);
+        }
+
+        double[] filmsPopularity = zipfCumulative(films);
+        for (int i = 1; i <= users; i++) {
+            Set<Long> filmsIds = new HashSet<>();
+            for (int k = 0; k < Math.min(likesPerUser, films); k++) {
+                filmsIds.add(sampleZipf(filmsPopularity, seedRandom));
+            }
+            for (Long filmId : filmsIds) {
+                rows.add(new Object[]{(long) i, filmId});
+            }
+            flush(jdbc, "INSERT INTO film_like (user_id, film_id) VALUES (?, ?)", rows, i == users);
+        }
+        jdbc.update("UPDATE films AS f SET like_count = (SELECT COUNT(*) FROM film_like AS fl WHERE fl.film_id = f.id)");
+
+        double harmonic = 0.0;
+        for (int i = 1; i <= users; i++) {
+            harmonic += 1.0 / i;
+        }
+        for (int i = 1; i <= users; i++) {
+            int degree = "zipf".equals(friendDegree)
+                    ? (int) Math.round((double) friendsPerUser * users / (i * harmonic))
+                    : friendsPerUser;
+            Set<Long> friendsIds = new HashSet<>();
+            for (int k = 0; k < Math.min(degree, users - 1); k++) {
+                long friendId = 1L + seedRandom.nextInt(users);
+                if (friendId != i) {
+                    friendsIds.add(friendId);
+                }
+            }
+            for (Long friendId : friendsIds) {
+                rows.add(new Object[]{(long) i, friendId});
+            }
+            flush(jdbc, "INSERT INTO user_friend (user_id, friend_id) VALUES (?, ?)", rows, i == users);
+        }
+    }
+
+    private static void flush(JdbcTemplate jdbc, String sql, List<Object[]> rows, boolean last) {
+        if (rows.size() >= BATCH_SIZE || (last && !rows.isEmpty())) {
+            jdbc.batchUpdate(sql, rows);
+            rows.clear();
+        }
+    }
+
+    private static double[] zipfCumulative(int size) {
+        double[] cumulative = new double[size];
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static long sampleZipf(double[] cumulative, Random seedRandom) {
+        int idx = Arrays.binarySearch(cumulative, seedRandom.nextDouble());
+        return 1L + Math.min(cumulative.length - 1, (idx >= 0) ? idx : -idx - 1);
+    }
+}
@@ -0,0 +1,108 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.exception.SearchLimitExceededException;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк поиска цепочки друзей на синтетическом графе.
+ * users * friendsPerUser связей (по умолчанию 1 000 000), случайные пары пользователей с фиксированным seed.
+ * topology: uniform - друзья выбираются равномерно, skewed - большинство связей ведет к небольшому числу
+ * популярных пользователей (хабов).
+ * findPath - двунаправленный поиск FriendGraph, naiveBfs - односторонний поиск в ширину
+ * с HashMap и ArrayDeque для сравнения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class FriendGraphPathBenchmark {
+    private static final long SEED = 42L;
+    private static final int PAIRS = 1024;
+    private static final int MAX_DEPTH = 6;
+    private static final int MAX_EXPANSIONS = 1_000_000;
+
+    @Param({"100000"})
+    public int users;
+
+    @Param({"10"})
+    public int friendsPerUser;
+
+    @Param({"uniform", "skewed"})
+    public String topology;
+
+    private FriendGraph graph;
+    private long[] fromIds;
+    private long[] toIds;
+    private int pairIdx;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new FriendGraph(null);
+        Random random = new Random(SEED);
+        boolean skewed = "skewed".equals(topology);
+        for (long userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < friendsPerUser; i++) {
+                double r = random.nextDouble();
+                long friendId = 1L + (long) ((skewed ? r * r * r : r) * users);
+                if (friendId != userId) {
+                    graph.addFriend(userId, friendId);
+                }
+            }
+        }
+
+        fromIds = new long[PAIRS];
+        toIds = new long[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            fromIds[i] = 1L + random.nextInt(users);
+            toIds[i] = 1L + random.nextInt(users);
+        }
+    }
+
+    @Benchmark
+    public long[] findPath() {
+        int idx = nextPair();
+        try {
+            return graph.findPath(fromIds[idx], toIds[idx], MAX_DEPTH, MAX_EXPANSIONS);
+        } catch (SearchLimitExceededException e) {
+            // an aborted search is a valid outcome, its cost is measured as well
+            return null;
+        }
+    }
+
+    @Benchmark
+    public int naiveBfs() {
+        int idx = nextPair();
+        long fromId = fromIds[idx];
+        long toId = toIds[idx];
+        Map<Long, Integer> depths = new HashMap<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        depths.put(fromId, 0);
+        queue.add(fromId);
+        while (!queue.isEmpty()) {
+            long nodeId = queue.poll();
+            int depth = depths.get(nodeId);
+            if (nodeId == toId) {
+                return depth;
+            }
+            if (depth == MAX_DEPTH) {
+                continue;
+            }
+            for (long friendId : graph.getFriendsIds(nodeId)) {
+                if (depths.putIfAbsent(friendId, depth + 1) == null) {
+                    queue.add(friendId);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int nextPair() {
+        pairIdx = (pairIdx + 1) & (PAIRS - 1);
+        return pairIdx;
+    }
+}
@@ -0,0 +1,358 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный тест REST API: запускает приложение с базой H2 в памяти, заполняет ее и выполняет смесь запросов
+ * с ID фильмов и пользователей по закону Ципфа. По каждому запросу печатает количество, ошибки,
+ * пропускную способность и перцентили задержки.
+ * Режимы:
+ * open - запросы отправляются с фиксированной частотой rate независимо от ответов, задержка считается
+ * от запланированного момента отправки, поэтому остановки сервера не скрываются (coordinated omission);
+ * closed - concurrency клиентов отправляют следующий запрос после ответа на предыдущий.
+ * Параметры задаются аргументами вида ключ=значение, например:
+ * mvn -P load-test test-compile exec:exec -Dload-test.args="mode=open rate=2000 duration=60 mix=popular:1,film:5"
+ */
+public class LoadTest {
+    private static final long MAX_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            Map.entry("mode", "open"),
+            Map.entry("rate", "1000"),
+            Map.entry("concurrency", "64"),
+            Map.entry("duration", "60"),
+            Map.entry("warmup", "10"),
+            Map.entry("films", "2000"),
+            Map.entry("users", "2000"),
+            Map.entry("likesPerUser", "5"),
+            Map.entry("friendsPerUser", "10"),
+            Map.entry("zipfExponent", "1.0"),
+            Map.entry("seed", "42"),
+            Map.entry("mix", "popular:20,film:30,like:10,unlike:5,addFriend:5,friends:20,commonFriends:10"));
+
+    private final Map<String, String> config;
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+    private final Operation[] mix;
+    private final ZipfSampler filmsSampler;
+    private final ZipfSampler usersSampler;
+    private final HttpClient client;
+    private final AtomicLong inFlight = new AtomicLong();
+    private String baseUrl;
+    private volatile long measureStartNanos;
+
+    LoadTest(Map<String, String> config) {
+        this.config = config;
+        this.mix = parseMix(config.get("mix"));
+        double exponent = Double.parseDouble(config.get("zipfExponent"));
+        this.filmsSampler = new ZipfSampler(intParam("films"), exponent);
+        this.usersSampler = new ZipfSampler(intParam("users"), exponent);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> config = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int idx = arg.indexOf('=');
+            if (idx <= 0 || !DEFAULTS.containsKey(arg.substring(0, idx))) {
+                throw new IllegalArgumentException("Неизвестный параметр: " + arg + ", доступны: " + DEFAULTS.keySet());
+            }
+            config.put(arg.substring(0, idx), arg.substring(idx + 1));
+        }
+        new LoadTest(config).run();
+    }
+
+    void run() throws Exception {
+        try (ServletWebServerApplicationContext context = startApplication()) {
+            baseUrl = "http://localhost:" + context.getWebServer().getPort();
+            seed(context);
+
+            long warmupNanos = TimeUnit.SECONDS.toNanos(intParam("warmup"));
+            long durationNanos = TimeUnit.SECONDS.toNanos(intParam("duration"));
+            long startNanos = System.nanoTime();
+            measureStartNanos = startNanos + warmupNanos;
+            long endNanos = measureStartNanos + durationNanos;
+            System.out.printf("Нагрузка: mode=%s, rate=%s, concurrency=%s, прогрев %d с, измерение %d с%n",
+                    config.get("mode"), config.get("rate"), config.get("concurrency"),
+                    intParam("warmup"), intParam("duration"));
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                if ("closed".equals(config.get("mode"))) {
+                    runClosedLoop(executor, endNanos);
+                } else {
+                    runOpenLoop(executor, startNanos, endNanos);
+                }
+            }
+            report(durationNanos);
+        }
+    }
+
+    private ServletWebServerApplicationContext startApplication() {
+        return (ServletWebServerApplicationContext) new SpringApplicationBuilder(FilmorateApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:filmorate-load-test;DB_CLOSE_DELAY=-1",
+                        "logging.level.root=WARN",
+                        "logging.level.org.zalando.logbook=OFF")
+                .run();
+    }
+
+    private void seed(ServletWebServerApplicationContext context) {
+        UserService userService = context.getBean(UserService.class);
+        FilmService filmService = context.getBean(FilmService.class);
+        SplittableRandom random = new SplittableRandom(Long.parseLong(config.get("seed")));
+        int films = intParam("films");
+        int users = intParam("users");
+
+        for (int i = 1; i <= users; i++) {
+            userService.addUser(User.of(null, "User " + i, "user" + i + "@mail.ru", "user" + i,
+                    LocalDate.of(1990, 1, 1)));
+        }
+        List<Film> batch = new ArrayList<>();
+        for (int i = 1; i <= films; i++) {
+            batch.add(Film.of(null, "Film " + i, "Description " + i, LocalDate.of(2000, 1, 1), 120, null, null));
+            if (batch.size() == 1000 || i == films) {
+                filmService.addFilms(batch);
+                batch.clear();
+            }
+        }
+        for (long userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < intParam("likesPerUser"); i++) {
+                filmService.addLike(filmsSampler.next(random), userId);
+            }
+            for (int i = 0; i < intParam("friendsPerUser"); i++) {
+                long friendId = usersSampler.next(random);
+                if (friendId != userId) {
+                    userService.addFriend(userId, friendId);
+                }
+            }
+        }
+        System.out.printf("База заполнена: фильмов %d, пользователей %d%n", films, users);
+    }
+
+    /**
+     * Открытая модель: i-й запрос запланирован на startNanos + i * interval и отправляется в отдельном
+     * виртуальном потоке, задержка отсчитывается от запланированного момента.
+     */
+    private void runOpenLoop(ExecutorService executor, long startNanos, long endNanos) {
+        long intervalNanos = Math.max(1L, TimeUnit.SECONDS.toNanos(1) / intParam("rate"));
+        SplittableRandom random = new SplittableRandom(Long.parseLong(config.get("seed")));
+        for (long i = 0; ; i++) {
+            long intendedNanos = startNanos + i * intervalNanos;
+            if (intendedNanos >= endNanos) {
+                break;
+            }
+            long waitNanos = intendedNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            Operation operation = mix[random.nextInt(mix.length)];
+            HttpRequest request = operation.request(this, random);
+            inFlight.incrementAndGet();
+            executor.execute(() -> execute(operation, request, intendedNanos));
+        }
+    }
+
+    private void runClosedLoop(ExecutorService executor, long endNanos) {
+        SplittableRandom seedRandom = new SplittableRandom(Long.parseLong(config.get("seed")));
+        for (int c = 0; c < intParam("concurrency"); c++) {
+            SplittableRandom random = seedRandom.split();
+            executor.execute(() -> {
+                while (System.nanoTime() < endNanos) {
+                    Operation operation = mix[random.nextInt(mix.length)];
+                    inFlight.incrementAndGet();
+                    execute(operation, operation.request(this, random), System.nanoTime());
+                }
+            });
+        }
+    }
+
+    private void execute(Operation operation, HttpRequest request, long intendedNanos) {
+        boolean failed;
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            failed = response.statusCode() >= 400;
+        } catch (Exception e) {
+            failed = true;
+        }
+        long endNanos = System.nanoTime();
+        inFlight.decrementAndGet();
+        if (intendedNanos >= measureStartNanos) {
+            stats.get(operation).record(TimeUnit.NANOSECONDS.toMicros(endNanos - intendedNanos), failed);
+        }
+    }
+
+    private void report(long durationNanos) {
+        double seconds = durationNanos / 1e9;
+        Histogram total = new Histogram(MAX_TRACKABLE_MICROS, 3);
+        long totalErrors = 0;
+        System.out.printf("%n%-14s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "операция", "запросов", "ошибок", "запр/с", "p50 мс", "p90 мс", "p99 мс", "p99.9 мс", "max мс");
+        for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+            Stats operationStats = entry.getValue();
+            if (operationStats.histogram.getTotalCount() == 0) {
+                continue;
+            }
+            printRow(entry.getKey().name(), operationStats.histogram, operationStats.errors.get(), seconds);
+            total.add(operationStats.histogram);
+            totalErrors += operationStats.errors.get();
+        }
+        printRow("TOTAL", total, totalErrors, seconds);
+        System.out.printf("Незавершенных запросов в конце измерения: %d%n", inFlight.get());
+    }
+
+    private static void printRow(String name, Histogram histogram, long errors, double seconds) {
+        System.out.printf("%-14s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, histogram.getTotalCount(), errors, histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile(50.0) / 1000.0, histogram.getValueAtPercentile(90.0) / 1000.0,
+                histogram.getValueAtPercentile(99.0) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    private int intParam(String name) {
+        return Integer.parseInt(config.get(name));
+    }
+
+    /**
+     * Разбирает смесь вида "popular:20,film:30" в массив, где операция повторяется пропорционально весу.
+     */
+    private static Operation[] parseMix(String value) {
+        List<Operation> operations = new ArrayList<>();
+        for (String part : value.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            Operation operation = Operation.byName(nameAndWeight[0]);
+            int weight = (nameAndWeight.length > 1) ? Integer.parseInt(nameAndWeight[1]) : 1;
+            for (int i = 0; i < weight; i++) {
+                operations.add(operation);
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("Смесь запросов не может быть пустой");
+        }
+        return operations.toArray(new Operation[0]);
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30));
+    }
+
+    private long nextFilmId(SplittableRandom random) {
+        return filmsSampler.next(random);
+    }
+
+    private long nextUserId(SplittableRandom random) {
+        return usersSampler.next(random);
+    }
+
+    private enum Operation {
+        POPULAR("popular") {
+            @Override
+            HttpRequest request(LoadTest test, SplittableRandom random) {
+                return test.request("/films/popular?count=10").GET().build();
+            }
+        },
+        FILM("film") {
+            @Override
+            HttpRequest request(LoadTest test, SplittableRandom random) {
+                return test.request("/films/" + test.nextFilmId(random)).GET().build();
+            }
+        },
+        LIKE("like") {
+            @Override
+            HttpRequest request(LoadTest test, SplittableRandom random) {
+                return test.request("/films/" + test.nextFilmId(random) + "/like/" + test.nextUserId(random))
+                        .PUT(HttpRequest.BodyPublishers.noBody())
+                        .build();
+            }
+        },
+        UNLIKE("unlike") {
+            @Override
+            HttpRequest request(LoadTest test, SplittableRandom random) {
+                return test.request("/films/" + test.nextFilmId(random) + "/like/" + test.nextUserId(random))
+                        .DELETE()
+                        .build();
+            }
+        },
+        ADD_FRIEND("addFriend") {
+            @Override
+            HttpRequest request(LoadTest test, SplittableRandom random) {
+                long userId = test.nextUserId(random);
+                long friendId = test.nextUserId(random);
+                if (friendId == userId) {
+                    friendId = (userId == 1L) ? 2L : 1L;
+                }
+                return test.request("/users/" + userId + "/friends/" + friendId)
+                        .PUT(HttpRequest.BodyPublishers.noBody())
+                        .build();
+            }
+        },
+        FRIENDS("friends") {
+            @Override
+            HttpRequest request(LoadTest test, SplittableRandom random) {
+                return test.request("/users/" + test.nextUserId(random) + "/friends").GET().build();
+            }
+        },
+        COMMON_FRIENDS("commonFriends") {
+            @Override
+            HttpRequest request(LoadTest test, SplittableRandom random) {
+                return test.request("/users/" + test.nextUserId(random) + "/friends/common/"
+                        + test.nextUserId(random)).GET().build();
+            }
+        };
+
+        private final String mixName;
+
+        Operation(String mixName) {
+            this.mixName = mixName;
+        }
+
+        abstract HttpRequest request(LoadTest test, SplittableRandom random);
+
+        static Operation byName(String name) {
+            for (Operation operation : values()) {
+                if (operation.mixName.equals(name)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Неизвестная операция в смеси запросов: " + name);
+        }
+    }
+
+    private static final class Stats {
+        private final Histogram histogram = new ConcurrentHistogram(MAX_TRACKABLE_MICROS, 3);
+        private final AtomicLong errors = new AtomicLong();
+
+        void record(long micros, boolean failed) {
+            histogram.recordValue(Math.min(Math.max(micros, 0L), MAX_TRACKABLE_MICROS));
+            if (failed) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Выборка ID от 1 до size по закону Ципфа: вероятность ID с рангом k пропорциональна 1 / k^exponent.
+ * ID 1 - самый популярный. Распределение рассчитывается один раз, выборка - двоичный поиск.
+ */
+final class ZipfSampler {
+    private final double[] cumulative;
+
+    ZipfSampler(int size, double exponent) {
+        cumulative = new double[size];
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    long next(SplittableRandom random) {
+        int idx = Arrays.binarySearch(cumulative, random.nextDouble());
+        return 1L + Math.min(cumulative.length - 1, (idx >= 0) ? idx : -idx - 1);
+    }
+}
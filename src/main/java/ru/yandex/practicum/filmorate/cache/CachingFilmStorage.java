@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import ru.yandex.practicum.filmorate.event.DictionaryReloadedEvent;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Класс-декоратор FilmStorage, кэширующий объекты Film по ID (read-through).
+ * Размер кэша ограничен, записи устаревают через заданное время после загрузки.
+ * Запись фильма удаляется из кэша при его обновлении, все записи - после повторной загрузки справочника
+ * жанров и MPA рейтингов (DictionaryReloadedEvent). Film не содержит данных о лайках, поэтому изменение
+ * лайков кэш не затрагивает.
+ * Остальные операции передаются в исходное хранилище без изменений.
+ */
+@Slf4j
+public class CachingFilmStorage implements FilmStorage {
+    private final FilmStorage delegate;
+    private final Cache<Long, Film> films;
+
+    public CachingFilmStorage(FilmStorage delegate, long maximumSize, Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.films = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    public Cache<Long, Film> getCache() {
+        return films;
+    }
+
+    @EventListener
+    public void onDictionaryReloaded(DictionaryReloadedEvent event) {
+        films.invalidateAll();
+        log.info("CachingFilmStorage: Кэш фильмов очищен после загрузки справочника жанров и MPA рейтингов");
+    }
+
+    @Override
+    public Film addFilm(Film film) {
+        Film addedFilm = delegate.addFilm(film);
+        films.put(addedFilm.getId(), addedFilm);
+        return addedFilm;
+    }
+
+    @Override
+    public List<Long> addFilms(List<Film> films) {
+        return delegate.addFilms(films);
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        try {
+            return delegate.updateFilm(film);
+        } finally {
+            films.invalidate(film.getId());
+            log.debug("CachingFilmStorage: Film с ID: {} удален из кэша", film.getId());
+        }
+    }
+
+    @Override
+    public List<Film> getAllFilms() {
+        return delegate.getAllFilms();
+    }
+
+    @Override
+    public List<Film> getFilmsPage(long afterId, int limit) {
+        return delegate.getFilmsPage(afterId, limit);
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> action) {
+        delegate.streamAllFilms(action);
+    }
+
+    @Override
+    public Film getFilmById(Long filmId) {
+        // NotFoundException из хранилища не кэшируется
+        return films.get(filmId, delegate::getFilmById);
+    }
+
+    @Override
+    public Set<Long> getExistingFilmsIds(Collection<Long> filmsIds) {
+        // фильмы, присутствующие в кэше, существуют; в хранилище проверяются только остальные
+        Map<Long, Film> cachedFilms = films.getAllPresent(filmsIds);
+        if (cachedFilms.size() == filmsIds.size()) {
+            return cachedFilms.keySet();
+        }
+        List<Long> missingIds = filmsIds.stream()
+                .filter(id -> !cachedFilms.containsKey(id))
+                .toList();
+        Set<Long> existingIds = new HashSet<>(cachedFilms.keySet());
+        existingIds.addAll(delegate.getExistingFilmsIds(missingIds));
+        return existingIds;
+    }
+
+    @Override
+    public boolean addLike(Long filmId, Long userId) {
+        return delegate.addLike(filmId, userId);
+    }
+
+    @Override
+    public boolean removeLike(Long filmId, Long userId) {
+        return delegate.removeLike(filmId, userId);
+    }
+
+    @Override
+    public void applyLikes(List<FilmLike> addedLikes, List<FilmLike> removedLikes) {
+        delegate.applyLikes(addedLikes, removedLikes);
+    }
+
+    @Override
+    public List<Film> getTopFilms(int limit) {
+        return delegate.getTopFilms(limit);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> filmsIds) {
+        Map<Long, Film> cachedFilms = films.getAllPresent(filmsIds);
+        if (cachedFilms.size() < filmsIds.size()) {
+            List<Long> missingIds = filmsIds.stream()
+                    .filter(id -> !cachedFilms.containsKey(id))
+                    .toList();
+            Map<Long, Film> loadedFilms = new HashMap<>(cachedFilms);
+            for (Film film : delegate.getFilmsByIds(missingIds)) {
+                films.put(film.getId(), film);
+                loadedFilms.put(film.getId(), film);
+            }
+            return orderByIds(filmsIds, loadedFilms);
+        }
+        return orderByIds(filmsIds, cachedFilms);
+    }
+
+    @Override
+    public Map<Long, Long> getFilmsLikesCounts() {
+        return delegate.getFilmsLikesCounts();
+    }
+
+    @Override
+    public void streamAllLikes(Consumer<FilmLike> action) {
+        delegate.streamAllLikes(action);
+    }
+
+    private static List<Film> orderByIds(List<Long> filmsIds, Map<Long, Film> filmsById) {
+        List<Film> orderedFilms = new ArrayList<>(filmsById.size());
+        for (Long filmId : filmsIds) {
+            Film film = filmsById.get(filmId);
+            if (film != null) {
+                orderedFilms.add(film);
+            }
+        }
+        return orderedFilms;
+    }
+}
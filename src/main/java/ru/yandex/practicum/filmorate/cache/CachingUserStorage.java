@@ -0,0 +1,190 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Класс-декоратор UserStorage, кэширующий объекты User по ID (read-through).
+ * Размер кэша ограничен (вытеснение Caffeine W-TinyLFU), записи устаревают через заданное время после загрузки.
+ * Запись пользователя удаляется из кэша при его обновлении.
+ * ID, для которых пользователь не найден, хранятся в отдельном негативном кэше с коротким сроком жизни,
+ * поэтому повторные запросы несуществующих пользователей не доходят до БД. При добавлении пользователя
+ * его ID удаляется из негативного кэша.
+ * Остальные операции передаются в исходное хранилище без изменений.
+ */
+@Slf4j
+public class CachingUserStorage implements UserStorage {
+    private final UserStorage delegate;
+    private final Cache<Long, User> users;
+    private final Cache<Long, Boolean> missingUsersIds;
+
+    public CachingUserStorage(UserStorage delegate, long maximumSize, Duration expireAfterWrite,
+                              long missingMaximumSize, Duration missingExpireAfterWrite) {
+        this.delegate = delegate;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.missingUsersIds = Caffeine.newBuilder()
+                .maximumSize(missingMaximumSize)
+                .expireAfterWrite(missingExpireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    public Cache<Long, User> getCache() {
+        return users;
+    }
+
+    public Cache<Long, Boolean> getMissingCache() {
+        return missingUsersIds;
+    }
+
+    @Override
+    public User addUser(User user) {
+        User addedUser = delegate.addUser(user);
+        missingUsersIds.invalidate(addedUser.getId());
+        users.put(addedUser.getId(), addedUser);
+        return addedUser;
+    }
+
+    @Override
+    public User updateUser(User user) {
+        try {
+            return delegate.updateUser(user);
+        } finally {
+            users.invalidate(user.getId());
+            log.debug("CachingUserStorage: User с ID: {} удален из кэша", user.getId());
+        }
+    }
+
+    @Override
+    public List<User> getAllUsers() {
+        return delegate.getAllUsers();
+    }
+
+    @Override
+    public List<User> getUsersPage(long afterId, int limit) {
+        return delegate.getUsersPage(afterId, limit);
+    }
+
+    @Override
+    public void streamAllUsers(Consumer<User> action) {
+        delegate.streamAllUsers(action);
+    }
+
+    @Override
+    public User getUserById(Long userId) {
+        if (missingUsersIds.getIfPresent(userId) != null) {
+            log.warn("CachingUserStorage: Не удалось получить объект User по его ID - не найден в приложении");
+            throw new NotFoundException("CachingUserStorage: User c ID: " + userId + " не найден в приложении");
+        }
+        try {
+            return users.get(userId, delegate::getUserById);
+        } catch (NotFoundException e) {
+            missingUsersIds.put(userId, Boolean.TRUE);
+            throw e;
+        }
+    }
+
+    @Override
+    public Set<Long> getExistingUsersIds(Collection<Long> usersIds) {
+        // пользователи из кэша существуют, ID из негативного кэша - нет; в хранилище проверяются только остальные
+        Map<Long, User> cachedUsers = users.getAllPresent(usersIds);
+        if (cachedUsers.size() == usersIds.size()) {
+            return cachedUsers.keySet();
+        }
+        Map<Long, Boolean> knownMissingIds = missingUsersIds.getAllPresent(usersIds);
+        List<Long> uncheckedIds = usersIds.stream()
+                .filter(id -> !cachedUsers.containsKey(id) && !knownMissingIds.containsKey(id))
+                .distinct()
+                .toList();
+        Set<Long> existingIds = new HashSet<>(cachedUsers.keySet());
+        if (!uncheckedIds.isEmpty()) {
+            Set<Long> checkedExistingIds = delegate.getExistingUsersIds(uncheckedIds);
+            for (Long userId : uncheckedIds) {
+                if (!checkedExistingIds.contains(userId)) {
+                    missingUsersIds.put(userId, Boolean.TRUE);
+                }
+            }
+            existingIds.addAll(checkedExistingIds);
+        }
+        return existingIds;
+    }
+
+    @Override
+    public boolean addFriend(Long userId, Long friendId) {
+        return delegate.addFriend(userId, friendId);
+    }
+
+    @Override
+    public boolean removeFriend(Long userId, Long friendId) {
+        return delegate.removeFriend(userId, friendId);
+    }
+
+    @Override
+    public List<User> getAllFriendsById(Long userId) {
+        return delegate.getAllFriendsById(userId);
+    }
+
+    @Override
+    public List<User> getUsersByIdSet(Set<Long> ids) {
+        Map<Long, User> cachedUsers = users.getAllPresent(ids);
+        if (cachedUsers.size() == ids.size()) {
+            return orderById(cachedUsers.values());
+        }
+        Set<Long> missingIds = new HashSet<>();
+        for (Long id : ids) {
+            if (!cachedUsers.containsKey(id)) {
+                missingIds.add(id);
+            }
+        }
+        List<User> loadedUsers = new ArrayList<>(cachedUsers.values());
+        for (User user : delegate.getUsersByIdSet(missingIds)) {
+            users.put(user.getId(), user);
+            loadedUsers.add(user);
+        }
+        return orderById(loadedUsers);
+    }
+
+    @Override
+    public Set<Long> getUserFriendsIdsById(Long userId) {
+        return delegate.getUserFriendsIdsById(userId);
+    }
+
+    @Override
+    public Map<Long, List<Long>> getFriendsIdsByUsersIds(Collection<Long> usersIds) {
+        return delegate.getFriendsIdsByUsersIds(usersIds);
+    }
+
+    @Override
+    public List<User> getCommonFriends(long userId, long otherId, long afterId, int limit) {
+        return delegate.getCommonFriends(userId, otherId, afterId, limit);
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(long userId, int limit) {
+        return delegate.getFriendSuggestions(userId, limit);
+    }
+
+    @Override
+    public void streamAllFriendships(Consumer<Friendship> action) {
+        delegate.streamAllFriendships(action);
+    }
+
+    private static List<User> orderById(Collection<User> users) {
+        List<User> orderedUsers = new ArrayList<>(users);
+        orderedUsers.sort(Comparator.comparing(User::getId));
+        return orderedUsers;
+    }
+}
@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.metrics.SqlProfiler;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Класс конфигурации профилирования SQL.
+ * При filmorate.sql-profiler.enabled=true хранилища получают JdbcOperations с профилированием (@Primary)
+ * поверх JdbcTemplate; статистика доступна через /actuator/sqlprofile.
+ * JdbcTemplate создается здесь: автоконфигурация не создает его при наличии другого бина JdbcOperations.
+ */
+@Configuration
+@ConditionalOnProperty(name = "filmorate.sql-profiler.enabled", havingValue = "true")
+public class SqlProfilerConfig {
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource, JdbcProperties properties) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        JdbcProperties.Template template = properties.getTemplate();
+        jdbcTemplate.setFetchSize(template.getFetchSize());
+        jdbcTemplate.setMaxRows(template.getMaxRows());
+        if (template.getQueryTimeout() != null) {
+            jdbcTemplate.setQueryTimeout((int) template.getQueryTimeout().getSeconds());
+        }
+        return jdbcTemplate;
+    }
+
+    @Bean
+    public SqlProfiler sqlProfiler(JdbcTemplate jdbcTemplate,
+                                   @Value("${filmorate.sql-profiler.slow-threshold:100ms}") Duration slowThreshold,
+                                   @Value("${filmorate.sql-profiler.explain-interval:1m}") Duration explainInterval,
+                                   @Value("${filmorate.sql-profiler.max-statements:500}") int maxStatements) {
+        return new SqlProfiler(jdbcTemplate, slowThreshold, explainInterval, maxStatements);
+    }
+
+    @Bean
+    @Primary
+    public JdbcOperations profilingJdbcOperations(JdbcTemplate jdbcTemplate, SqlProfiler sqlProfiler) {
+        return sqlProfiler.wrap(jdbcTemplate);
+    }
+}
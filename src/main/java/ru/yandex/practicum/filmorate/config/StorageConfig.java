@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import ru.yandex.practicum.filmorate.cache.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.cache.CachingUserStorage;
+import ru.yandex.practicum.filmorate.dal.FilmDbStorage;
+import ru.yandex.practicum.filmorate.dal.UserDbStorage;
+import ru.yandex.practicum.filmorate.dal.WriteBehindLikesFilmStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.Duration;
+
+/**
+ * Класс конфигурации хранилищ приложения.
+ * Собирает цепочку декораторов поверх хранилищ, работающих с базой данных;
+ * результат внедряется в сервисы как основная (@Primary) реализация интерфейса хранилища.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "filmorate.likes.write-behind.enabled", havingValue = "true")
+    public WriteBehindLikesFilmStorage writeBehindLikesFilmStorage(
+            FilmDbStorage filmDbStorage,
+            @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+            @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+            @Value("${filmorate.likes.write-behind.max-delay:200ms}") Duration maxDelay,
+            @Value("${filmorate.likes.write-behind.max-retries:3}") int maxRetries,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        return new WriteBehindLikesFilmStorage(filmDbStorage, batchSize, capacity, maxDelay, maxRetries,
+                virtualThreads);
+    }
+
+    @Bean
+    @Primary
+    public FilmStorage filmStorage(FilmDbStorage filmDbStorage,
+                                   ObjectProvider<WriteBehindLikesFilmStorage> writeBehindLikesFilmStorage,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${filmorate.cache.films.maximum-size:10000}") long maximumSize,
+                                   @Value("${filmorate.cache.films.expire-after-write:10m}") Duration expireAfterWrite) {
+        FilmStorage filmStorage = filmDbStorage;
+        // optional write-behind mode for likes
+        WriteBehindLikesFilmStorage writeBehindStorage = writeBehindLikesFilmStorage.getIfAvailable();
+        if (writeBehindStorage != null) {
+            filmStorage = writeBehindStorage;
+        }
+
+        CachingFilmStorage cachingFilmStorage = new CachingFilmStorage(filmStorage, maximumSize, expireAfterWrite);
+        // hit/miss/eviction: /actuator/metrics/cache.gets, /actuator/metrics/cache.evictions (tag cache=films)
+        CaffeineCacheMetrics.monitor(meterRegistry, cachingFilmStorage.getCache(), "films");
+        return cachingFilmStorage;
+    }
+
+    @Bean
+    @Primary
+    public UserStorage userStorage(
+            UserDbStorage userDbStorage,
+            MeterRegistry meterRegistry,
+            @Value("${filmorate.cache.users.maximum-size:10000}") long maximumSize,
+            @Value("${filmorate.cache.users.expire-after-write:10m}") Duration expireAfterWrite,
+            @Value("${filmorate.cache.users.missing.maximum-size:10000}") long missingMaximumSize,
+            @Value("${filmorate.cache.users.missing.expire-after-write:1m}") Duration missingExpireAfterWrite) {
+        CachingUserStorage cachingUserStorage = new CachingUserStorage(userDbStorage, maximumSize, expireAfterWrite,
+                missingMaximumSize, missingExpireAfterWrite);
+        // hit/miss/size: /actuator/metrics/cache.gets, /actuator/metrics/cache.size (tag cache=users, users-missing)
+        CaffeineCacheMetrics.monitor(meterRegistry, cachingUserStorage.getCache(), "users");
+        CaffeineCacheMetrics.monitor(meterRegistry, cachingUserStorage.getMissingCache(), "users-missing");
+        Gauge.builder("filmorate.cache.hit.ratio", cachingUserStorage.getCache(), cache -> cache.stats().hitRate())
+                .description("Доля попаданий в кэш пользователей")
+                .tag("cache", "users")
+                .register(meterRegistry);
+        return cachingUserStorage;
+    }
+}
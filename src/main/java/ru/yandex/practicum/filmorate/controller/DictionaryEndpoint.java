@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.GenreMpaDictionary;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint справочника жанров и MPA рейтингов.
+ * GET /actuator/dictionaries — размеры справочника,
+ * POST /actuator/dictionaries — повторная загрузка справочника из БД.
+ */
+@Slf4j
+@Component
+@Endpoint(id = "dictionaries")
+public class DictionaryEndpoint {
+    private final GenreMpaDictionary dictionary;
+
+    @Autowired
+    public DictionaryEndpoint(GenreMpaDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @ReadOperation
+    public Map<String, Integer> sizes() {
+        return Map.of(
+                "genres", dictionary.getAllGenres().size(),
+                "mpa", dictionary.getAllMpaRatings().size()
+        );
+    }
+
+    @WriteOperation
+    public Map<String, Integer> reload() {
+        log.info("DictionaryEndpoint: Запрос на повторную загрузку справочника жанров и MPA рейтингов");
+        dictionary.reload();
+        return sizes();
+    }
+}
@@ -1,10 +1,15 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmBatchItemResult;
 
 import java.util.List;
 
@@ -13,10 +18,19 @@ import java.util.List;
  * Базовый путь - /films.
  * Доступны методы POST, PUT для добавления, обновления фильма;
  * метод GET для получение списка всех фильмов.
+ * Путь /films/batch.
+ * Доступен метод POST для пакетного добавления фильмов, возвращает ID или ошибку для каждого фильма.
+ * Ошибка одного фильма не отменяет сохранение остальных: ответ содержит ошибку только для этого фильма.
+ * Путь /films?after={after}&limit={limit}.
+ * Доступен метод GET для постраничного получения фильмов с ID больше after (не более limit фильмов).
+ * Путь /films/stream.
+ * Доступен метод GET для потоковой выгрузки всех фильмов в формате NDJSON.
  * Путь /films/{id}.
  * Доступен метод GET для получения фильма по его ID.
  * Путь /films/{id}/like/{userId}
  * Доступны методы PUT, DELETE для добавления, удаления лайка к фильму.
+ * Путь /films/{id}/similar?limit={limit}.
+ * Доступен метод GET для получения похожих фильмов - по общим лайкам пользователей и общим жанрам.
  * Путь /films/popular?count={count}.
  * Доступен метод GET для получения списка из первых count фильмов по количеству лайков.
  * Если значение параметра count не задано, возвращается первые 10 фильмов
@@ -28,10 +42,12 @@ import java.util.List;
 @Slf4j
 public class FilmController {
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectMapper objectMapper) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -40,6 +56,12 @@ public class FilmController {
         return filmService.addFilm(film);
     }
 
+    @PostMapping("/batch")
+    public List<FilmBatchItemResult> addFilms(@RequestBody List<Film> films) {
+        log.info("Запрос на пакетное добавление фильмов в приложение");
+        return filmService.addFilms(films);
+    }
+
     @PutMapping
     public Film updateFilm(@RequestBody Film film) {
         log.info("Запрос на обновление данных фильма");
@@ -47,9 +69,26 @@ public class FilmController {
     }
 
     @GetMapping
-    public List<Film> getAllFilms() {
-        log.info("Запрос на получение списка всех фильмов");
-        return filmService.getAllFilms();
+    public List<Film> getAllFilms(@RequestParam(required = false) Long after,
+                                  @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            log.info("Запрос на получение списка всех фильмов");
+            return filmService.getAllFilms();
+        }
+        log.info("Запрос на получение страницы списка фильмов");
+        return filmService.getFilmsPage(after, limit);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllFilms() {
+        log.info("Запрос на потоковую выгрузку всех фильмов");
+        StreamingResponseBody body = outputStream -> {
+            NdjsonWriter<Film> writer = new NdjsonWriter<>(outputStream, objectMapper);
+            filmService.streamAllFilms(writer::write);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @GetMapping("/{id}")
@@ -70,6 +109,12 @@ public class FilmController {
         filmService.removeLike(id, userId);
     }
 
+    @GetMapping("/{id}/similar")
+    public List<Film> getSimilarFilms(@PathVariable Long id, @RequestParam(required = false) Integer limit) {
+        log.info("Запрос на получение списка похожих фильмов");
+        return filmService.getSimilarFilms(id, limit);
+    }
+
     @GetMapping("/popular")
     public List<Film> getTopFilms(@RequestParam(defaultValue = "10") int count) {
         log.info("Запрос на получение списка n-лучших фильмов по кол-ву лайков");
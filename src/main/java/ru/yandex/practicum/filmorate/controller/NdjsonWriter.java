@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Вспомогательный класс записи объектов в поток в формате newline-delimited JSON (NDJSON):
+ * каждый объект сериализуется в отдельную строку сразу при получении.
+ */
+class NdjsonWriter<T> {
+    private static final int NEW_LINE = '\n';
+
+    private final OutputStream outputStream;
+    private final ObjectMapper objectMapper;
+
+    NdjsonWriter(OutputStream outputStream, ObjectMapper objectMapper) {
+        this.outputStream = outputStream;
+        this.objectMapper = objectMapper;
+    }
+
+    void write(T value) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(value));
+            outputStream.write(NEW_LINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.SqlProfiler;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint профилировщика SQL.
+ * GET /actuator/sqlprofile?limit={limit} — самые затратные запросы по суммарному времени (по умолчанию 20),
+ * DELETE /actuator/sqlprofile — сброс статистики.
+ */
+@Slf4j
+@Component
+@Endpoint(id = "sqlprofile")
+@ConditionalOnProperty(name = "filmorate.sql-profiler.enabled", havingValue = "true")
+public class SqlProfileEndpoint {
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final SqlProfiler sqlProfiler;
+
+    @Autowired
+    public SqlProfileEndpoint(SqlProfiler sqlProfiler) {
+        this.sqlProfiler = sqlProfiler;
+    }
+
+    @ReadOperation
+    public List<SqlProfiler.StatementReport> top(@Nullable Integer limit) {
+        return sqlProfiler.getTopStatements((limit == null) ? DEFAULT_LIMIT : limit);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        log.info("SqlProfileEndpoint: Запрос на сброс статистики SQL-запросов");
+        sqlProfiler.reset();
+    }
+}
@@ -1,26 +1,48 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * UserController — класс-контроллер, предоставляющий API для работы с данными типа User.
  * Базовый путь - /users.
  * Доступны методы POST, PUT для добавления, обновления пользователя;
  * метод GET для получение списка всех пользователей.
+ * Путь /users?after={after}&limit={limit}.
+ * Доступен метод GET для постраничного получения пользователей с ID больше after (не более limit пользователей).
+ * Путь /users/stream.
+ * Доступен метод GET для потоковой выгрузки всех пользователей в формате NDJSON.
  * Путь /users/{id}.
  * Доступен метод GET для получения пользователя по его ID.
  * Путь /{id}/friends/{friendId}.
  * Доступны методы PUT, DELETE для добавления, удаления друга для пользователя.
  * Путь /{id}/friends
  * Доступен метод GET для получение списка всех друзей пользователя.
+ * Путь /friends:batch
+ * Доступен метод POST для получения списков друзей нескольких пользователей (тело запроса - список ID).
  * Путь /{id}/friends/common/{otherId}
  * Доступен метод GET для получение списка общих друзей двух пользователей.
+ * Путь /{id}/friends/suggestions?limit={limit}
+ * Доступен метод GET для получения рекомендаций друзей - друзей друзей по убыванию количества общих друзей.
+ * Путь /{id}/recommendations?limit={limit}
+ * Доступен метод GET для получения рекомендаций фильмов - фильмов, лайкнутых пользователями с похожими лайками.
+ * Путь /{id}/path/{otherId}
+ * Доступен метод GET для получения кратчайшей цепочки друзей от пользователя до другого пользователя.
+ * Если цепочки нет, возвращается 404, если поиск превысил лимит просмотра связей - 422.
+ * Путь /{id}/friends/common/{otherId}?after={after}&limit={limit}.
+ * Доступен метод GET для постраничного получения общих друзей с ID больше after (не более limit друзей).
  * Сохраняет корректные объекты User используя реализацию класса UserService.
  * Должен соотвествовать архитектурному стилю проектирования распределённых систем REST
  */
@@ -29,10 +51,14 @@ import java.util.List;
 @Slf4j
 public class UserController {
     private final UserService userService;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, FilmService filmService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -48,9 +74,26 @@ public class UserController {
     }
 
     @GetMapping
-    public List<User> getAllUsers() {
-        log.info("Запрос на получение списка всех пользователей");
-        return userService.getAllUsers();
+    public List<User> getAllUsers(@RequestParam(required = false) Long after,
+                                  @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            log.info("Запрос на получение списка всех пользователей");
+            return userService.getAllUsers();
+        }
+        log.info("Запрос на получение страницы списка пользователей");
+        return userService.getUsersPage(after, limit);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        log.info("Запрос на потоковую выгрузку всех пользователей");
+        StreamingResponseBody body = outputStream -> {
+            NdjsonWriter<User> writer = new NdjsonWriter<>(outputStream, objectMapper);
+            userService.streamAllUsers(writer::write);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @GetMapping("/{id}")
@@ -71,15 +114,45 @@ public class UserController {
         userService.removeFriend(id, friendId);
     }
 
+    @PostMapping("/friends:batch")
+    public Map<Long, List<User>> getFriendsByUsersIds(@RequestBody List<Long> usersIds) {
+        log.info("Запрос на получение списков друзей нескольких пользователей");
+        return userService.getFriendsByUsersIds(usersIds);
+    }
+
     @GetMapping("/{id}/friends")
     public List<User> getAllFriendsById(@PathVariable Long id) {
         log.info("Запрос на получение списка друзей пользователя");
         return userService.getAllFriendsById(id);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable Long id, @RequestParam(required = false) Integer limit) {
+        log.info("Запрос на получение рекомендаций друзей пользователя");
+        return userService.getFriendSuggestions(id, limit);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable Long id, @RequestParam(required = false) Integer limit) {
+        log.info("Запрос на получение рекомендаций фильмов для пользователя");
+        return filmService.getRecommendations(id, limit);
+    }
+
+    @GetMapping("/{id}/path/{otherId}")
+    public List<User> getFriendPath(@PathVariable Long id, @PathVariable Long otherId) {
+        log.info("Запрос на поиск цепочки друзей между пользователями");
+        return userService.getFriendPath(id, otherId);
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
-    public List<User> getAllCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
-        log.info("Запрос на получение списка общих друзей пользователей");
-        return userService.getAllCommonFriendsByIds(id, otherId);
+    public List<User> getAllCommonFriends(@PathVariable Long id, @PathVariable Long otherId,
+                                          @RequestParam(required = false) Long after,
+                                          @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            log.info("Запрос на получение списка общих друзей пользователей");
+            return userService.getAllCommonFriendsByIds(id, otherId);
+        }
+        log.info("Запрос на получение страницы списка общих друзей пользователей");
+        return userService.getCommonFriendsPage(id, otherId, after, limit);
     }
 }
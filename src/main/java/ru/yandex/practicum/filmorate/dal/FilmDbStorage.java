@@ -2,15 +2,19 @@ package ru.yandex.practicum.filmorate.dal;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.*;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.event.FilmLikesChangedEvent;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 
 import java.sql.PreparedStatement;
@@ -18,6 +22,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Класс для взаимодействия объектов Film с базой данных
@@ -25,13 +30,23 @@ import java.util.*;
 @Slf4j
 @Repository
 public class FilmDbStorage implements FilmStorage {
+    // H2 honours the fetch size only with LAZY_QUERY_EXECUTION (spring.datasource.url), otherwise the whole
+    // result is materialized before the first row; ORDER BY of the stream queries follows the primary keys,
+    // so H2 does not have to sort the result either
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final JdbcOperations jdbc;
     private final RowMapper<Film> mapper;
+    private final GenreMpaDictionary dictionary;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public FilmDbStorage(final JdbcOperations jdbc, final RowMapper<Film> mapper) {
+    public FilmDbStorage(final JdbcOperations jdbc, final RowMapper<Film> mapper,
+                         final GenreMpaDictionary dictionary, final ApplicationEventPublisher eventPublisher) {
         this.jdbc = jdbc;
         this.mapper = mapper;
+        this.dictionary = dictionary;
+        this.eventPublisher = eventPublisher;
     }
 
 
@@ -102,20 +117,62 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
+    @Transactional
+    public List<Long> addFilms(List<Film> films) {
+        final String INSERT_FILM_QUERY = """
+                INSERT INTO films (name, description, release_date, duration, mpa_rating_id)
+                VALUES (?, ?, ?, ?, ?);
+                """;
+        final String INSERT_FILM_ID_GENRES_IDS_QUERY = """
+                INSERT INTO film_genre (film_id, genre_id)
+                VALUES (?, ?);
+                """;
+
+        // insert films in one batch
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(connection -> connection.prepareStatement(INSERT_FILM_QUERY, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = films.get(i);
+                        ps.setString(1, film.getName());
+                        ps.setString(2, film.getDescription());
+                        ps.setObject(3, film.getReleaseDate());
+                        ps.setInt(4, film.getDuration());
+                        ps.setObject(5, film.getMpa().getId());
+                    }
+
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != films.size()) {
+            throw new InternalServerException("FilmDbStorage: Не удалось сохранить данные пакета Film");
+        }
+        List<Long> generatedIds = new ArrayList<>(keys.size());
+        for (Map<String, Object> key : keys) {
+            generatedIds.add(((Number) key.values().iterator().next()).longValue());
+        }
+
+        // insert genres of all films in one batch
+        List<long[]> filmsIdsWithGenresIds = new ArrayList<>();
+        for (int idx = 0; idx < films.size(); idx++) {
+            for (Genre genre : films.get(idx).getGenres()) {
+                filmsIdsWithGenresIds.add(new long[]{generatedIds.get(idx), genre.getId()});
+            }
+        }
+        batchUpdateFilmsGenres(INSERT_FILM_ID_GENRES_IDS_QUERY, filmsIdsWithGenresIds);
+        return generatedIds;
+    }
+
+    @Override
+    @Transactional
     public Film updateFilm(Film film) {
         final String UPDATE_FILM_QUERY = """
                 UPDATE films
                 SET name = ?, description = ?, release_date = ?, duration = ?, mpa_rating_id = ?
                 WHERE id = ?;
                 """;
-        final String DELETE_GENRES_QUERY = """
-                DELETE FROM film_genre
-                WHERE film_id = ?;
-                """;
-        final String INSERT_FILM_ID_GENRES_IDS_QUERY = """
-                INSERT INTO film_genre (film_id, genre_id)
-                VALUES (?, ?);
-                """;
 
         final Object[] params = {
                 film.getName(),
@@ -132,32 +189,8 @@ public class FilmDbStorage implements FilmStorage {
             throw new InternalServerException("FilmDbStorage: Не удалось обновить данные Film");
         }
 
-        // update genres
-        // delete
-        int rowsDeleted = jdbc.update(DELETE_GENRES_QUERY, film.getId());
-        if (rowsDeleted == 0) {
-            log.info("FilmDbStorage: Не удалось удалить genres у Film с ID: {}", film.getId());
-        }
-        // insert if present
-        if (!(film.getGenres().isEmpty())) {
-            List<Integer> genresIds = film.getGenres()
-                    .stream()
-                    .map(Genre::getId)
-                    .toList();
-
-            jdbc.batchUpdate(INSERT_FILM_ID_GENRES_IDS_QUERY,
-                    new BatchPreparedStatementSetter() {
-                        public void setValues(PreparedStatement ps, int i) throws SQLException {
-                            Integer genreId = genresIds.get(i);
-                            ps.setLong(1, film.getId());
-                            ps.setInt(2, genreId);
-                        }
-
-                        public int getBatchSize() {
-                            return genresIds.size();
-                        }
-                    });
-        }
+        // update genres, only changed rows
+        updateFilmsGenres(List.of(film));
 
         return film;
     }
@@ -165,15 +198,12 @@ public class FilmDbStorage implements FilmStorage {
     @Override
     public List<Film> getAllFilms() {
         final String FIND_ALL_FILMS_WITH_MPA_RATING_QUERY = """
-                SELECT f.*, mr.name AS mpa_rating_name
+                SELECT f.*
                 FROM films AS f
-                LEFT OUTER JOIN mpa_rating AS mr
-                ON f.mpa_rating_id = mr.mpa_rating_id
                 """;
         final String FIND_ALL_FILMS_IDS_WITH_GENRES_QUERY = """
-                SELECT fg.film_id, fg.genre_id, g.name AS genre_name
+                SELECT fg.film_id, fg.genre_id
                 FROM film_genre AS fg
-                LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id
                 """;
 
         // get all films with mpa rating, without genres
@@ -184,7 +214,7 @@ public class FilmDbStorage implements FilmStorage {
 
         // get all films ids with genres
         Map<Long, SequencedSet<Genre>> filmsGenres = jdbc.query(FIND_ALL_FILMS_IDS_WITH_GENRES_QUERY,
-                new FilmDbStorage.FilmsIdsWithGenresExtractor());
+                new FilmsIdsWithGenresExtractor());
 
         // insert genres (if present) to films
         List<Film> films = new ArrayList<>();
@@ -207,14 +237,50 @@ public class FilmDbStorage implements FilmStorage {
         return films;
     }
 
+    @Override
+    public List<Film> getFilmsPage(long afterId, int limit) {
+        final String FIND_FILMS_WITH_MPA_RATING_AFTER_ID_LIMITED_QUERY = """
+                SELECT f.*
+                FROM films AS f
+                WHERE f.id > ?
+                ORDER BY f.id
+                LIMIT ?;
+                """;
+
+        // get page of films with mpa rating, without genres
+        List<Film> tmpFilms = jdbc.query(FIND_FILMS_WITH_MPA_RATING_AFTER_ID_LIMITED_QUERY, mapper, afterId, limit);
+        if (tmpFilms == null || tmpFilms.isEmpty()) {
+            return List.of();
+        }
+        return addGenresToFilms(tmpFilms);
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> action) {
+        final String FIND_ALL_FILMS_WITH_MPA_AND_GENRES_SORTED_BY_ID_QUERY = """
+                SELECT f.*, fg.genre_id
+                FROM films AS f
+                LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
+                ORDER BY f.id;
+                """;
+
+        // forward-only cursor, rows of one film are adjacent and collapsed into a single Film
+        FilmsStreamingHandler handler = new FilmsStreamingHandler(action);
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(FIND_ALL_FILMS_WITH_MPA_AND_GENRES_SORTED_BY_ID_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, handler);
+        handler.finish();
+    }
+
     @Override
     public Film getFilmById(Long id) {
         final String FIND_FILM_BY_ID_WITH_MPA_AND_GENRES_QUERY = """
-                SELECT f.*, mr.name AS mpa_rating_name, fg.genre_id, g.name AS genre_name
+                SELECT f.*, fg.genre_id
                 FROM films AS f
-                LEFT OUTER JOIN mpa_rating AS mr ON f.mpa_rating_id = mr.mpa_rating_id
                 LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
-                LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id
                 WHERE f.id = ?;
                 """;
 
@@ -230,114 +296,384 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
-    public void addLike(Long filmId, Long userId) {
-        final String INSERT_FILM_LIKE_QUERY = """
+    public Set<Long> getExistingFilmsIds(Collection<Long> filmsIds) {
+        final String FIND_EXISTING_FILMS_IDS_QUERY = """
+                SELECT id
+                FROM films
+                WHERE id IN (%s);
+                """;
+        if (filmsIds.isEmpty()) {
+            return Set.of();
+        }
+        final String sqlPlaceholders = String.join(",", Collections.nCopies(filmsIds.size(), "?"));
+
+        return Set.copyOf(jdbc.queryForList(String.format(FIND_EXISTING_FILMS_IDS_QUERY, sqlPlaceholders), Long.class, filmsIds.toArray()));
+    }
+
+    /**
+     * Добавляет лайк, если его еще нет. Возвращает true, если лайк был добавлен.
+     * Повторный и одновременный лайк от того же пользователя не приводит к ошибке.
+     */
+    @Override
+    @Transactional
+    public boolean addLike(Long filmId, Long userId) {
+        final String INSERT_FILM_LIKE_IF_ABSENT_QUERY = """
                 INSERT INTO film_like (film_id, user_id)
-                VALUES (?, ?);
+                SELECT CAST(? AS BIGINT), CAST(? AS BIGINT)
+                WHERE NOT EXISTS (SELECT 1 FROM film_like WHERE film_id = ? AND user_id = ?);
+                """;
+        final String INCREMENT_FILM_LIKE_COUNT_QUERY = """
+                UPDATE films
+                SET like_count = like_count + 1
+                WHERE id = ?;
                 """;
 
         final Object[] params = {
+                filmId,
+                userId,
                 filmId,
                 userId
         };
 
-        jdbc.update(INSERT_FILM_LIKE_QUERY, params);
+        int rowsInserted;
+        try {
+            rowsInserted = jdbc.update(INSERT_FILM_LIKE_IF_ABSENT_QUERY, params);
+        } catch (DuplicateKeyException ignored) {
+            // concurrent insert of the same like has won
+            rowsInserted = 0;
+        }
+        if (rowsInserted == 0) {
+            log.info("FilmDbStorage: Лайк Film с ID: {} от User с ID: {} был добавлен ранее", filmId, userId);
+            return false;
+        }
+        jdbc.update(INCREMENT_FILM_LIKE_COUNT_QUERY, filmId);
+        eventPublisher.publishEvent(FilmLikesChangedEvent.added(FilmLike.of(filmId, userId)));
+        return true;
     }
 
     @Override
-    public void removeLike(Long filmId, Long userId) {
+    @Transactional
+    public boolean removeLike(Long filmId, Long userId) {
         final String DELETE_FILM_LIKE_QUERY = """
                 DELETE FROM film_like
                 WHERE film_id = ? AND user_id = ?;
                 """;
+        final String DECREMENT_FILM_LIKE_COUNT_QUERY = """
+                UPDATE films
+                SET like_count = like_count - 1
+                WHERE id = ? AND like_count > 0;
+                """;
 
         int rowsDeleted = jdbc.update(DELETE_FILM_LIKE_QUERY, filmId, userId);
         if (rowsDeleted == 0) {
             log.info("FilmDbStorage: Не удалось удалить like у Film с ID: {}", filmId);
+            return false;
+        }
+        jdbc.update(DECREMENT_FILM_LIKE_COUNT_QUERY, filmId);
+        eventPublisher.publishEvent(FilmLikesChangedEvent.removed(FilmLike.of(filmId, userId)));
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public void applyLikes(List<FilmLike> addedLikes, List<FilmLike> removedLikes) {
+        final String INSERT_FILM_LIKE_IF_ABSENT_QUERY = """
+                INSERT INTO film_like (film_id, user_id)
+                SELECT CAST(? AS BIGINT), CAST(? AS BIGINT)
+                WHERE NOT EXISTS (SELECT 1 FROM film_like WHERE film_id = ? AND user_id = ?);
+                """;
+        final String DELETE_FILM_LIKE_QUERY = """
+                DELETE FROM film_like
+                WHERE film_id = ? AND user_id = ?;
+                """;
+        final String CHANGE_FILM_LIKE_COUNT_QUERY = """
+                UPDATE films
+                SET like_count = GREATEST(like_count + ?, 0)
+                WHERE id = ?;
+                """;
+
+        // insert, likes already present in DB are skipped
+        int[] rowsInserted = addedLikes.isEmpty() ? new int[0] : jdbc.batchUpdate(INSERT_FILM_LIKE_IF_ABSENT_QUERY,
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        FilmLike like = addedLikes.get(i);
+                        ps.setLong(1, like.getFilmId());
+                        ps.setLong(2, like.getUserId());
+                        ps.setLong(3, like.getFilmId());
+                        ps.setLong(4, like.getUserId());
+                    }
+
+                    public int getBatchSize() {
+                        return addedLikes.size();
+                    }
+                });
+        // delete
+        int[] rowsDeleted = removedLikes.isEmpty() ? new int[0] : jdbc.batchUpdate(DELETE_FILM_LIKE_QUERY,
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        FilmLike like = removedLikes.get(i);
+                        ps.setLong(1, like.getFilmId());
+                        ps.setLong(2, like.getUserId());
+                    }
+
+                    public int getBatchSize() {
+                        return removedLikes.size();
+                    }
+                });
+
+        // like counters of changed films
+        List<FilmLike> appliedAddedLikes = new ArrayList<>();
+        List<FilmLike> appliedRemovedLikes = new ArrayList<>();
+        Map<Long, Integer> likeCountDeltas = new HashMap<>();
+        for (int i = 0; i < rowsInserted.length; i++) {
+            if (rowsInserted[i] > 0) {
+                FilmLike like = addedLikes.get(i);
+                appliedAddedLikes.add(like);
+                likeCountDeltas.merge(like.getFilmId(), 1, Integer::sum);
+            }
+        }
+        for (int i = 0; i < rowsDeleted.length; i++) {
+            if (rowsDeleted[i] > 0) {
+                FilmLike like = removedLikes.get(i);
+                appliedRemovedLikes.add(like);
+                likeCountDeltas.merge(like.getFilmId(), -1, Integer::sum);
+            }
+        }
+        likeCountDeltas.values().removeIf(delta -> delta == 0);
+        if (!likeCountDeltas.isEmpty()) {
+            List<Map.Entry<Long, Integer>> deltas = List.copyOf(likeCountDeltas.entrySet());
+            jdbc.batchUpdate(CHANGE_FILM_LIKE_COUNT_QUERY,
+                    new BatchPreparedStatementSetter() {
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setInt(1, deltas.get(i).getValue());
+                            ps.setLong(2, deltas.get(i).getKey());
+                        }
+
+                        public int getBatchSize() {
+                            return deltas.size();
+                        }
+                    });
+        }
+
+        if (!appliedAddedLikes.isEmpty() || !appliedRemovedLikes.isEmpty()) {
+            eventPublisher.publishEvent(FilmLikesChangedEvent.of(appliedAddedLikes, appliedRemovedLikes));
         }
     }
 
     @Override
     public List<Film> getTopFilms(int limit) {
         final String FIND_FILMS_WITH_MPA_RATING_SORTED_BY_LIKES_LIMITED_QUERY = """
-                SELECT f.*, mr.name AS mpa_rating_name
-                FROM films AS f
-                LEFT OUTER JOIN mpa_rating AS mr ON f.mpa_rating_id = mr.mpa_rating_id
-                LEFT OUTER JOIN film_like AS fl ON f.id = fl.film_id
-                GROUP BY f.id
-                ORDER BY COUNT(fl.user_id) DESC
-                LIMIT ?;
-                """;
-        final String FIND_FILMS_IDS_WITH_GENRES_SORTED_BY_LIKES_LIMITED_QUERY = """
-                SELECT f.id AS film_id, fg.genre_id, g.name AS genre_name
+                SELECT f.*
                 FROM films AS f
-                LEFT OUTER JOIN film_like AS fl ON f.id = fl.film_id
-                LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
-                LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id
-                GROUP BY f.id, fg.genre_id
-                ORDER BY COUNT(fl.user_id) DESC, f.id
+                ORDER BY f.like_count DESC, f.id
                 LIMIT ?;
                 """;
 
-        // get all films with mpa rating, without genres, sorted by number of likes and limited
+        // get films with mpa rating, without genres, sorted by like counter (films_like_count_idx) and limited
         List<Film> sortFilms = jdbc.query(FIND_FILMS_WITH_MPA_RATING_SORTED_BY_LIKES_LIMITED_QUERY, mapper, limit);
         if (sortFilms == null || sortFilms.isEmpty()) {
             return List.of();
         }
+        return addGenresToFilms(sortFilms);
+    }
 
-        // get all films ids with genres
-        Map<Long, SequencedSet<Genre>> filmsGenres = jdbc.query(FIND_FILMS_IDS_WITH_GENRES_SORTED_BY_LIKES_LIMITED_QUERY,
-                new FilmDbStorage.FilmsIdsWithGenresExtractor(), limit);
+    @Override
+    public List<Film> getFilmsByIds(List<Long> filmsIds) {
+        final String FIND_FILMS_WITH_MPA_RATING_BY_IDS_QUERY = """
+                SELECT f.*
+                FROM films AS f
+                WHERE f.id IN (%s);
+                """;
+        if (filmsIds.isEmpty()) {
+            return List.of();
+        }
+        final String sqlPlaceholders = String.join(",", Collections.nCopies(filmsIds.size(), "?"));
 
-        // insert genres to films
-        List<Film> films = new ArrayList<>();
-        for (Film sortFilm : sortFilms) {
-            Film film = Film.of(
-                    sortFilm.getId(),
-                    sortFilm.getName(),
-                    sortFilm.getDescription(),
-                    sortFilm.getReleaseDate(),
-                    sortFilm.getDuration(),
-                    Collections.unmodifiableSequencedSet(filmsGenres.get(sortFilm.getId())),
-                    sortFilm.getMpa()
-            );
-            films.add(film);
+        List<Film> tmpFilms = jdbc.query(String.format(FIND_FILMS_WITH_MPA_RATING_BY_IDS_QUERY, sqlPlaceholders),
+                mapper, filmsIds.toArray());
+        if (tmpFilms == null || tmpFilms.isEmpty()) {
+            return List.of();
+        }
+
+        // restore order of requested ids
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : addGenresToFilms(tmpFilms)) {
+            filmsById.put(film.getId(), film);
+        }
+        List<Film> films = new ArrayList<>(filmsById.size());
+        for (Long filmId : filmsIds) {
+            Film film = filmsById.get(filmId);
+            if (film != null) {
+                films.add(film);
+            }
+        }
+        return films;
+    }
+
+    @Override
+    public Map<Long, Long> getFilmsLikesCounts() {
+        final String FIND_FILMS_IDS_WITH_LIKES_COUNTS_QUERY = """
+                SELECT f.id, COUNT(fl.user_id) AS likes
+                FROM films AS f
+                LEFT OUTER JOIN film_like AS fl ON f.id = fl.film_id
+                GROUP BY f.id;
+                """;
+
+        Map<Long, Long> likesCounts = new HashMap<>();
+        jdbc.query(FIND_FILMS_IDS_WITH_LIKES_COUNTS_QUERY,
+                (RowCallbackHandler) rs -> likesCounts.put(rs.getLong("id"), rs.getLong("likes")));
+        return likesCounts;
+    }
+
+    @Override
+    public void streamAllLikes(Consumer<FilmLike> action) {
+        final String FIND_ALL_LIKES_SORTED_QUERY = """
+                SELECT user_id, film_id
+                FROM film_like
+                ORDER BY user_id, film_id;
+                """;
+
+        // forward-only cursor, rows of one user are adjacent and sorted by film_id
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(FIND_ALL_LIKES_SORTED_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(FilmLike.of(rs.getLong("film_id"), rs.getLong("user_id"))));
+    }
+
+    /**
+     * Приводит жанры фильмов в film_genre к жанрам переданных фильмов.
+     * Сохраненные жанры всех фильмов читаются одним запросом, затем пакетно удаляются
+     * только отсутствующие в фильме жанры и добавляются только новые.
+     * Вызывается в транзакции обновления фильмов.
+     */
+    private void updateFilmsGenres(List<Film> films) {
+        final String FIND_FILMS_IDS_WITH_GENRES_IDS_BY_FILMS_IDS_QUERY = """
+                SELECT film_id, genre_id
+                FROM film_genre
+                WHERE film_id IN (%s);
+                """;
+        final String DELETE_FILM_ID_GENRE_ID_QUERY = """
+                DELETE FROM film_genre
+                WHERE film_id = ? AND genre_id = ?;
+                """;
+        final String INSERT_FILM_ID_GENRES_IDS_QUERY = """
+                INSERT INTO film_genre (film_id, genre_id)
+                VALUES (?, ?);
+                """;
+        final String sqlPlaceholders = String.join(",", Collections.nCopies(films.size(), "?"));
+        final Object[] filmsIds = films.stream()
+                .map(Film::getId)
+                .toArray();
+
+        // stored genres
+        Map<Long, Set<Integer>> storedGenresIds = new HashMap<>();
+        jdbc.query(String.format(FIND_FILMS_IDS_WITH_GENRES_IDS_BY_FILMS_IDS_QUERY, sqlPlaceholders),
+                (RowCallbackHandler) rs -> storedGenresIds
+                        .computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>())
+                        .add(rs.getInt("genre_id")),
+                filmsIds);
+
+        // diff
+        List<long[]> genresToDelete = new ArrayList<>();
+        List<long[]> genresToInsert = new ArrayList<>();
+        for (Film film : films) {
+            Set<Integer> stored = storedGenresIds.getOrDefault(film.getId(), Set.of());
+            Set<Integer> actual = new HashSet<>();
+            for (Genre genre : film.getGenres()) {
+                actual.add(genre.getId());
+                if (!stored.contains(genre.getId())) {
+                    genresToInsert.add(new long[]{film.getId(), genre.getId()});
+                }
+            }
+            for (Integer genreId : stored) {
+                if (!actual.contains(genreId)) {
+                    genresToDelete.add(new long[]{film.getId(), genreId});
+                }
+            }
+        }
+
+        batchUpdateFilmsGenres(DELETE_FILM_ID_GENRE_ID_QUERY, genresToDelete);
+        batchUpdateFilmsGenres(INSERT_FILM_ID_GENRES_IDS_QUERY, genresToInsert);
+        log.debug("FilmDbStorage: Жанры фильмов обновлены, удалено: {}, добавлено: {}",
+                genresToDelete.size(), genresToInsert.size());
+    }
+
+    /**
+     * Пакетно выполняет запрос с параметрами (film_id, genre_id) для каждой пары из списка.
+     */
+    private void batchUpdateFilmsGenres(String query, List<long[]> filmsIdsWithGenresIds) {
+        if (filmsIdsWithGenresIds.isEmpty()) {
+            return;
+        }
+        jdbc.batchUpdate(query,
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        long[] filmIdWithGenreId = filmsIdsWithGenresIds.get(i);
+                        ps.setLong(1, filmIdWithGenreId[0]);
+                        ps.setInt(2, (int) filmIdWithGenreId[1]);
+                    }
+
+                    public int getBatchSize() {
+                        return filmsIdsWithGenresIds.size();
+                    }
+                });
+    }
+
+    /**
+     * Дополняет фильмы жанрами, запрашивая film_genre только для ID переданных фильмов.
+     * Порядок фильмов сохраняется.
+     */
+    private List<Film> addGenresToFilms(List<Film> tmpFilms) {
+        final String FIND_FILMS_IDS_WITH_GENRES_BY_FILMS_IDS_QUERY = """
+                SELECT fg.film_id, fg.genre_id
+                FROM film_genre AS fg
+                WHERE fg.film_id IN (%s);
+                """;
+        final String sqlPlaceholders = String.join(",", Collections.nCopies(tmpFilms.size(), "?"));
+        final Object[] filmsIds = tmpFilms.stream()
+                .map(Film::getId)
+                .toArray();
+
+        Map<Long, SequencedSet<Genre>> filmsGenres = jdbc.query(
+                String.format(FIND_FILMS_IDS_WITH_GENRES_BY_FILMS_IDS_QUERY, sqlPlaceholders),
+                new FilmsIdsWithGenresExtractor(), filmsIds);
+
+        // insert genres (if present) to films
+        List<Film> films = new ArrayList<>(tmpFilms.size());
+        for (Film tmpFilm : tmpFilms) {
+            if (filmsGenres != null && filmsGenres.containsKey(tmpFilm.getId())) {
+                Film film = Film.of(
+                        tmpFilm.getId(),
+                        tmpFilm.getName(),
+                        tmpFilm.getDescription(),
+                        tmpFilm.getReleaseDate(),
+                        tmpFilm.getDuration(),
+                        Collections.unmodifiableSequencedSet(filmsGenres.get(tmpFilm.getId())),
+                        tmpFilm.getMpa()
+                );
+                films.add(film);
+            } else {
+                films.add(tmpFilm);
+            }
         }
         return films;
     }
 
-    private static class FilmWithRatingAndGenresExtractor implements ResultSetExtractor<Optional<Film>> {
+    private class FilmWithRatingAndGenresExtractor implements ResultSetExtractor<Optional<Film>> {
         @Override
         public Optional<Film> extractData(ResultSet rs) throws SQLException, DataAccessException {
             Film tmpFilm = null;
             SequencedSet<Genre> genres = new LinkedHashSet<>();
             while (rs.next()) {
                 if (tmpFilm == null) {
-                    // mpa
-                    Integer ratingId = rs.getInt("mpa_rating_id");
-                    if (ratingId == 0) {
-                        ratingId = null;
-                    }
-                    MpaRating mpa = MpaRating.of(
-                            ratingId,
-                            rs.getString("mpa_rating_name")
-                    );
-                    // film
-                    tmpFilm = Film.of(
-                            rs.getLong("id"),
-                            rs.getString("name"),
-                            rs.getString("description"),
-                            rs.getDate("release_date").toLocalDate(),
-                            rs.getInt("duration"),
-                            Collections.unmodifiableSequencedSet(new LinkedHashSet<>()),
-                            mpa
-                    );
+                    // film with mpa
+                    tmpFilm = mapper.mapRow(rs, rs.getRow());
                 }
                 //genre
-                int genreId = rs.getInt("genre_id");
-                String genreName = rs.getString("genre_name");
-                if (genreId != 0) {
-                    Genre genre = Genre.of(genreId, genreName);
+                Genre genre = dictionary.getGenre(rs.getInt("genre_id"));
+                if (genre != null) {
                     genres.add(genre);
                 }
             }
@@ -358,20 +694,59 @@ public class FilmDbStorage implements FilmStorage {
         }
     }
 
-    private static class FilmsIdsWithGenresExtractor implements ResultSetExtractor<Map<Long, SequencedSet<Genre>>> {
+    private class FilmsStreamingHandler implements RowCallbackHandler {
+        private final Consumer<Film> action;
+        private Film tmpFilm;
+        private SequencedSet<Genre> genres;
+
+        FilmsStreamingHandler(Consumer<Film> action) {
+            this.action = action;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long filmId = rs.getLong("id");
+            if (tmpFilm == null || tmpFilm.getId() != filmId) {
+                finish();
+                // film with mpa
+                Film mappedFilm = mapper.mapRow(rs, rs.getRow());
+                genres = new LinkedHashSet<>();
+                tmpFilm = Film.of(
+                        mappedFilm.getId(),
+                        mappedFilm.getName(),
+                        mappedFilm.getDescription(),
+                        mappedFilm.getReleaseDate(),
+                        mappedFilm.getDuration(),
+                        Collections.unmodifiableSequencedSet(genres),
+                        mappedFilm.getMpa()
+                );
+            }
+            //genre
+            Genre genre = dictionary.getGenre(rs.getInt("genre_id"));
+            if (genre != null) {
+                genres.add(genre);
+            }
+        }
+
+        void finish() {
+            if (tmpFilm != null) {
+                action.accept(tmpFilm);
+                tmpFilm = null;
+            }
+        }
+    }
+
+    private class FilmsIdsWithGenresExtractor implements ResultSetExtractor<Map<Long, SequencedSet<Genre>>> {
         @Override
         public Map<Long, SequencedSet<Genre>> extractData(ResultSet rs) throws SQLException, DataAccessException {
             Map<Long, SequencedSet<Genre>> data = new HashMap<>();
-            Genre genre;
             while (rs.next()) {
                 // film id
                 Long filmId = rs.getLong("film_id");
                 data.putIfAbsent(filmId, new LinkedHashSet<>());
                 //genre
-                int genreId = rs.getInt("genre_id");
-                String genreName = rs.getString("genre_name");
-                if (genreId != 0) {
-                    genre = Genre.of(genreId, genreName);
+                Genre genre = dictionary.getGenre(rs.getInt("genre_id"));
+                if (genre != null) {
                     data.get(filmId).add(genre);
                 }
             }
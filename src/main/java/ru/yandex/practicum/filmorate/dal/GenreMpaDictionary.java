@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.event.DictionaryReloadedEvent;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+
+import java.util.List;
+
+/**
+ * Класс-справочник жанров и MPA рейтингов.
+ * Таблицы genres и mpa_rating загружаются из БД один раз при старте приложения
+ * в неизменяемые массивы, индексированные по ID; повторная загрузка выполняется явно методом reload.
+ * Объекты Genre и MpaRating справочника переиспользуются всеми фильмами.
+ * После повторной загрузки публикуется DictionaryReloadedEvent, по которому сбрасываются кэши фильмов.
+ */
+@Slf4j
+@Component
+public class GenreMpaDictionary {
+    private final JdbcOperations jdbc;
+    private final RowMapper<Genre> genreMapper;
+    private final RowMapper<MpaRating> mpaMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public GenreMpaDictionary(JdbcOperations jdbc, RowMapper<Genre> genreMapper, RowMapper<MpaRating> mpaMapper,
+                              ApplicationEventPublisher eventPublisher) {
+        this.jdbc = jdbc;
+        this.genreMapper = genreMapper;
+        this.mpaMapper = mpaMapper;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public List<Genre> getAllGenres() {
+        return snapshot.allGenres();
+    }
+
+    public List<MpaRating> getAllMpaRatings() {
+        return snapshot.allMpaRatings();
+    }
+
+    /**
+     * Возвращает жанр по ID или null, если жанр с таким ID отсутствует.
+     */
+    public Genre getGenre(Integer id) {
+        Genre[] genres = snapshot.genres();
+        if (id == null || id < 0 || id >= genres.length) {
+            return null;
+        }
+        return genres[id];
+    }
+
+    /**
+     * Возвращает MPA рейтинг по ID или null, если рейтинг с таким ID отсутствует.
+     */
+    public MpaRating getMpaRating(Integer id) {
+        MpaRating[] mpaRatings = snapshot.mpaRatings();
+        if (id == null || id < 0 || id >= mpaRatings.length) {
+            return null;
+        }
+        return mpaRatings[id];
+    }
+
+    @PostConstruct
+    public synchronized void reload() {
+        final String FIND_ALL_GENRES_QUERY = """
+                SELECT *
+                FROM genres
+                ORDER BY genre_id;
+                """;
+        final String FIND_ALL_MPA_RATINGS_QUERY = """
+                SELECT *
+                FROM mpa_rating
+                ORDER BY mpa_rating_id;
+                """;
+
+        List<Genre> allGenres = List.copyOf(jdbc.query(FIND_ALL_GENRES_QUERY, genreMapper));
+        List<MpaRating> allMpaRatings = List.copyOf(jdbc.query(FIND_ALL_MPA_RATINGS_QUERY, mpaMapper));
+
+        int maxGenreId = allGenres.isEmpty() ? 0 : allGenres.getLast().getId();
+        Genre[] genres = new Genre[maxGenreId + 1];
+        for (Genre genre : allGenres) {
+            genres[genre.getId()] = genre;
+        }
+        int maxMpaId = allMpaRatings.isEmpty() ? 0 : allMpaRatings.getLast().getId();
+        MpaRating[] mpaRatings = new MpaRating[maxMpaId + 1];
+        for (MpaRating mpa : allMpaRatings) {
+            mpaRatings[mpa.getId()] = mpa;
+        }
+
+        boolean isReload = snapshot != null;
+        snapshot = new Snapshot(genres, mpaRatings, allGenres, allMpaRatings);
+        log.info("GenreMpaDictionary: Справочник загружен, жанров: {}, рейтингов: {}",
+                allGenres.size(), allMpaRatings.size());
+        if (isReload) {
+            eventPublisher.publishEvent(DictionaryReloadedEvent.of(allGenres.size(), allMpaRatings.size()));
+        }
+    }
+
+    private record Snapshot(Genre[] genres, MpaRating[] mpaRatings,
+                            List<Genre> allGenres, List<MpaRating> allMpaRatings) {
+    }
+}
@@ -3,9 +3,6 @@ package ru.yandex.practicum.filmorate.dal;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.JdbcOperations;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.MpaRating;
@@ -14,49 +11,28 @@ import ru.yandex.practicum.filmorate.storage.MpaRatingStorage;
 import java.util.List;
 
 /**
- * Класс для взаимодействия объектов MpaRating с базой данных
+ * Класс для взаимодействия объектов MpaRating с базой данных.
+ * Таблица загружается один раз в справочник GenreMpaDictionary, запросы к БД на каждый вызов не выполняются.
  */
 @Slf4j
 @Repository
 @Primary
 public class MpaRatingDbStorage implements MpaRatingStorage {
-    private final JdbcOperations jdbc;
-    private final RowMapper<MpaRating> mapper;
+    private final GenreMpaDictionary dictionary;
 
     @Autowired
-    public MpaRatingDbStorage(JdbcOperations jdbc, RowMapper<MpaRating> mapper) {
-        this.jdbc = jdbc;
-        this.mapper = mapper;
+    public MpaRatingDbStorage(GenreMpaDictionary dictionary) {
+        this.dictionary = dictionary;
     }
 
     @Override
     public List<MpaRating> getAllMpaRatings() {
-        final String FIND_ALL_QUERY = """
-                SELECT *
-                FROM mpa_rating;
-                """;
-
-        List<MpaRating> mpaRatings = jdbc.query(FIND_ALL_QUERY, mapper);
-        if (mpaRatings == null || mpaRatings.isEmpty()) {
-            return List.of();
-        }
-        return mpaRatings;
+        return dictionary.getAllMpaRatings();
     }
 
     @Override
     public MpaRating getMpaRatingById(Integer id) {
-        final String FIND_BY_ID_QUERY = """
-                SELECT *
-                FROM mpa_rating
-                WHERE mpa_rating_id = ?;
-                """;
-
-        MpaRating mpa;
-        try {
-            mpa = jdbc.queryForObject(FIND_BY_ID_QUERY, mapper, id);
-        } catch (EmptyResultDataAccessException ignored) {
-            mpa = null;
-        }
+        MpaRating mpa = dictionary.getMpaRating(id);
         if (mpa == null) {
             log.warn("MpaRatingDbStorage: Не удалось получить объект MpaRating по его ID - не найден в приложении");
             throw new NotFoundException("MpaRatingDbStorage: Рейтинг c ID: " + id + " не найден в приложении");
@@ -2,18 +2,24 @@ package ru.yandex.practicum.filmorate.dal;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.*;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.event.FriendshipsChangedEvent;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Класс для взаимодействия объектов User с базой данных
@@ -21,14 +27,21 @@ import java.util.*;
 @Slf4j
 @Repository
 public class UserDbStorage implements UserStorage {
+    // H2 honours the fetch size only with LAZY_QUERY_EXECUTION (spring.datasource.url), otherwise the whole
+    // result is materialized before the first row; ORDER BY of the stream queries follows the primary keys,
+    // so H2 does not have to sort the result either
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final JdbcOperations jdbc;
     private final RowMapper<User> mapper;
-
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public UserDbStorage(final JdbcOperations jdbc, final RowMapper<User> mapper) {
+    public UserDbStorage(final JdbcOperations jdbc, final RowMapper<User> mapper,
+                         final ApplicationEventPublisher eventPublisher) {
         this.jdbc = jdbc;
         this.mapper = mapper;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -111,6 +124,37 @@ public class UserDbStorage implements UserStorage {
         return tmpUsers;
     }
 
+    @Override
+    public List<User> getUsersPage(long afterId, int limit) {
+        final String FIND_USERS_AFTER_ID_LIMITED_QUERY = """
+                SELECT *
+                FROM users
+                WHERE id > ?
+                ORDER BY id
+                LIMIT ?;
+                """;
+
+        return jdbc.query(FIND_USERS_AFTER_ID_LIMITED_QUERY, mapper, afterId, limit);
+    }
+
+    @Override
+    public void streamAllUsers(Consumer<User> action) {
+        final String FIND_ALL_USERS_SORTED_BY_ID_QUERY = """
+                SELECT *
+                FROM users
+                ORDER BY id;
+                """;
+
+        // forward-only cursor, each row is passed to action as soon as it is read
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(FIND_ALL_USERS_SORTED_BY_ID_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(mapper.mapRow(rs, rs.getRow())));
+    }
+
+    @Override
     public User getUserById(Long id) {
         final String FIND_USER_BY_ID_QUERY = """
                 SELECT *
@@ -132,22 +176,59 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
-    public void addFriend(Long userId, Long friendId) {
-        final String INSERT_USER_FRIEND_QUERY = """
+    public Set<Long> getExistingUsersIds(Collection<Long> usersIds) {
+        final String FIND_EXISTING_USERS_IDS_QUERY = """
+                SELECT id
+                FROM users
+                WHERE id IN (%s);
+                """;
+        if (usersIds.isEmpty()) {
+            return Set.of();
+        }
+        final String sqlPlaceholders = String.join(",", Collections.nCopies(usersIds.size(), "?"));
+
+        return Set.copyOf(jdbc.queryForList(String.format(FIND_EXISTING_USERS_IDS_QUERY, sqlPlaceholders), Long.class, usersIds.toArray()));
+    }
+
+    /**
+     * Добавляет друга, если он еще не добавлен. Возвращает true, если запись была добавлена.
+     * Повторное и одновременное добавление того же друга не приводит к ошибке.
+     */
+    @Override
+    public boolean addFriend(Long userId, Long friendId) {
+        final String INSERT_USER_FRIEND_IF_ABSENT_QUERY = """
                 INSERT INTO user_friend (user_id, friend_id)
-                VALUES (?, ?);
+                SELECT CAST(? AS BIGINT), CAST(? AS BIGINT)
+                WHERE NOT EXISTS (SELECT 1 FROM user_friend WHERE user_id = ? AND friend_id = ?);
                 """;
 
         final Object[] params = {
+                userId,
+                friendId,
                 userId,
                 friendId
         };
 
-        jdbc.update(INSERT_USER_FRIEND_QUERY, params);
+        int rowsInserted;
+        try {
+            rowsInserted = jdbc.update(INSERT_USER_FRIEND_IF_ABSENT_QUERY, params);
+        } catch (DuplicateKeyException ignored) {
+            // concurrent insert of the same friendship has won
+            rowsInserted = 0;
+        }
+        if (rowsInserted == 0) {
+            log.info("UserDbStorage: Друг с ID: {} был добавлен User с ID: {} ранее", friendId, userId);
+            return false;
+        }
+        eventPublisher.publishEvent(FriendshipsChangedEvent.added(Friendship.of(userId, friendId)));
+        return true;
     }
 
+    /**
+     * Удаляет друга. Возвращает true, если запись была удалена.
+     */
     @Override
-    public void removeFriend(Long userId, Long friendId) {
+    public boolean removeFriend(Long userId, Long friendId) {
         final String DELETE_USER_FRIEND_QUERY = """
                 DELETE FROM user_friend
                 WHERE user_id = ? AND friend_id = ?;
@@ -156,7 +237,10 @@ public class UserDbStorage implements UserStorage {
         int rowsDeleted = jdbc.update(DELETE_USER_FRIEND_QUERY, userId, friendId);
         if (rowsDeleted == 0) {
             log.info("UserDbStorage: Не удалось удалить друга User с ID: {}", userId);
+            return false;
         }
+        eventPublisher.publishEvent(FriendshipsChangedEvent.removed(Friendship.of(userId, friendId)));
+        return true;
     }
 
     @Override
@@ -175,7 +259,8 @@ public class UserDbStorage implements UserStorage {
         final String FIND_USERS_BY_IDS_QUERY = """
                 SELECT *
                 FROM users
-                WHERE id IN (%s);
+                WHERE id IN (%s)
+                ORDER BY id;
                 """;
         final String sqlPlaceholders = String.join(",", Collections.nCopies(ids.size(), "?"));
 
@@ -192,4 +277,90 @@ public class UserDbStorage implements UserStorage {
 
         return Set.copyOf(jdbc.queryForList(FIND_USER_FRIENDS_IDS_BY_ID_QUERY, Long.class, userId));
     }
+
+    /**
+     * Возвращает ID друзей каждого из переданных пользователей одним запросом к user_friend.
+     * ID друзей упорядочены по возрастанию; пользователи без друзей в результат не попадают.
+     */
+    @Override
+    public Map<Long, List<Long>> getFriendsIdsByUsersIds(Collection<Long> usersIds) {
+        final String FIND_FRIENDS_IDS_BY_USERS_IDS_QUERY = """
+                SELECT user_id, friend_id
+                FROM user_friend
+                WHERE user_id IN (%s)
+                ORDER BY user_id, friend_id;
+                """;
+        if (usersIds.isEmpty()) {
+            return Map.of();
+        }
+        final String sqlPlaceholders = String.join(",", Collections.nCopies(usersIds.size(), "?"));
+
+        Map<Long, List<Long>> friendsIds = new HashMap<>();
+        jdbc.query(String.format(FIND_FRIENDS_IDS_BY_USERS_IDS_QUERY, sqlPlaceholders),
+                (RowCallbackHandler) rs -> friendsIds
+                        .computeIfAbsent(rs.getLong("user_id"), id -> new ArrayList<>())
+                        .add(rs.getLong("friend_id")),
+                usersIds.toArray());
+        return friendsIds;
+    }
+
+    /**
+     * Возвращает общих друзей двух пользователей одним запросом: соединение user_friend с самой собой по friend_id.
+     * Друзья упорядочены по ID, возвращаются не более limit друзей с ID больше afterId.
+     */
+    @Override
+    public List<User> getCommonFriends(long userId, long otherId, long afterId, int limit) {
+        final String FIND_COMMON_FRIENDS_AFTER_ID_LIMITED_QUERY = """
+                SELECT u.*
+                FROM user_friend AS uf1
+                JOIN user_friend AS uf2 ON uf1.friend_id = uf2.friend_id
+                JOIN users AS u ON u.id = uf1.friend_id
+                WHERE uf1.user_id = ? AND uf2.user_id = ? AND uf1.friend_id > ?
+                ORDER BY uf1.friend_id
+                LIMIT ?;
+                """;
+
+        return jdbc.query(FIND_COMMON_FRIENDS_AFTER_ID_LIMITED_QUERY, mapper, userId, otherId, afterId, limit);
+    }
+
+    /**
+     * Возвращает друзей друзей пользователя, упорядоченных по убыванию количества общих друзей, при равенстве - по ID.
+     * Текущие друзья и сам пользователь исключаются. Весь двухшаговый обход выполняется одним запросом.
+     */
+    @Override
+    public List<User> getFriendSuggestions(long userId, int limit) {
+        final String FIND_FRIEND_SUGGESTIONS_LIMITED_QUERY = """
+                SELECT u.*
+                FROM users AS u
+                JOIN (SELECT uf2.friend_id AS id, COUNT(*) AS mutual_friends
+                      FROM user_friend AS uf1
+                      JOIN user_friend AS uf2 ON uf1.friend_id = uf2.user_id
+                      WHERE uf1.user_id = ?
+                        AND uf2.friend_id <> ?
+                        AND uf2.friend_id NOT IN (SELECT friend_id FROM user_friend WHERE user_id = ?)
+                      GROUP BY uf2.friend_id
+                      ORDER BY mutual_friends DESC, uf2.friend_id
+                      LIMIT ?) AS s ON u.id = s.id
+                ORDER BY s.mutual_friends DESC, u.id;
+                """;
+
+        return jdbc.query(FIND_FRIEND_SUGGESTIONS_LIMITED_QUERY, mapper, userId, userId, userId, limit);
+    }
+
+    @Override
+    public void streamAllFriendships(Consumer<Friendship> action) {
+        final String FIND_ALL_FRIENDSHIPS_SORTED_QUERY = """
+                SELECT user_id, friend_id
+                FROM user_friend
+                ORDER BY user_id, friend_id;
+                """;
+
+        // forward-only cursor, rows of one user are adjacent and sorted by friend_id
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(FIND_ALL_FRIENDSHIPS_SORTED_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(Friendship.of(rs.getLong("user_id"), rs.getLong("friend_id"))));
+    }
 }
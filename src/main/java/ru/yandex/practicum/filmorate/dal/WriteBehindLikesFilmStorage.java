@@ -0,0 +1,309 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Класс-декоратор FilmStorage с отложенной (write-behind) записью лайков.
+ * Операции addLike/removeLike помещаются в ограниченный буфер в памяти, более поздняя операция
+ * над той же парой (фильм, пользователь) заменяет более раннюю.
+ * Буфер записывается в БД одним пакетом (FilmStorage.applyLikes) при достижении batchSize операций
+ * или не позднее maxDelay после первой операции в буфере. maxDelay определяет, какой объем лайков
+ * может быть потерян при аварийной остановке приложения.
+ * Буфер вместе с записываемым пакетом содержит не более capacity операций. При заполненном буфере вызывающий
+ * поток сначала сам записывает буфер и только затем помещает в него свою операцию; если запись не удалась,
+ * операция не принимается и выбрасывается ServiceUnavailableException (503).
+ * Неудачно записанный пакет возвращается в буфер и записывается повторно; после maxRetries неудачных попыток
+ * подряд операции пакета записываются по одной, а операции, которые не удалось записать, отбрасываются
+ * с записью в лог, чтобы одна ошибочная строка (например, лайк удаленного фильма) не блокировала буфер.
+ * При штатной остановке приложения буфер записывается в БД (close).
+ * Остальные операции передаются в исходное хранилище без изменений.
+ */
+@Slf4j
+public class WriteBehindLikesFilmStorage implements FilmStorage, AutoCloseable {
+    private final FilmStorage delegate;
+    private final int batchSize;
+    private final int capacity;
+    private final Duration maxDelay;
+    private final int maxRetries;
+    private final ScheduledExecutorService scheduler;
+    private final Object pendingLock = new Object();
+    // true - добавление лайка, false - удаление
+    private LinkedHashMap<FilmLike, Boolean> pendingLikes = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    // количество операций в записываемом пакете, изменяется под pendingLock
+    private int flushingCount;
+    // сбросы буфера выполняются строго последовательно, чтобы более поздние операции не были перезаписаны ранними
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // количество неудачных попыток записи подряд, изменяется под flushLock
+    private int failedFlushes;
+
+    /**
+     * При virtualThreads = true запись буфера выполняется в виртуальном потоке: блокировка на JDBC
+     * не занимает поток платформы.
+     */
+    public WriteBehindLikesFilmStorage(FilmStorage delegate, int batchSize, int capacity, Duration maxDelay,
+                                       int maxRetries, boolean virtualThreads) {
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.capacity = Math.max(capacity, batchSize);
+        this.maxDelay = maxDelay;
+        this.maxRetries = Math.max(maxRetries, 1);
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("likes-write-behind").factory()
+                : Thread.ofPlatform().name("likes-write-behind").daemon(true).factory();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * Лайк добавляется при очередной записи буфера, поэтому результат добавления заранее неизвестен
+     * и метод всегда возвращает false. Фактические изменения публикуются хранилищем после записи.
+     */
+    @Override
+    public boolean addLike(Long filmId, Long userId) {
+        enqueue(FilmLike.of(filmId, userId), true);
+        return false;
+    }
+
+    /**
+     * Лайк удаляется при очередной записи буфера, поэтому результат удаления заранее неизвестен
+     * и метод всегда возвращает false. Фактические изменения публикуются хранилищем после записи.
+     */
+    @Override
+    public boolean removeLike(Long filmId, Long userId) {
+        enqueue(FilmLike.of(filmId, userId), false);
+        return false;
+    }
+
+    public int getPendingLikesCount() {
+        synchronized (pendingLock) {
+            return pendingLikes.size();
+        }
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            LinkedHashMap<FilmLike, Boolean> likes;
+            synchronized (pendingLock) {
+                if (pendingLikes.isEmpty()) {
+                    return;
+                }
+                likes = pendingLikes;
+                pendingLikes = new LinkedHashMap<>();
+                flushingCount = likes.size();
+            }
+
+            List<FilmLike> addedLikes = new ArrayList<>();
+            List<FilmLike> removedLikes = new ArrayList<>();
+            likes.forEach((like, isAdded) -> (isAdded ? addedLikes : removedLikes).add(like));
+            try {
+                delegate.applyLikes(addedLikes, removedLikes);
+                failedFlushes = 0;
+                log.debug("WriteBehindLikesFilmStorage: Записано в БД лайков: {}, удалено: {}",
+                        addedLikes.size(), removedLikes.size());
+            } catch (RuntimeException e) {
+                if (++failedFlushes >= maxRetries) {
+                    failedFlushes = 0;
+                    log.warn("WriteBehindLikesFilmStorage: Пакет лайков не записан в БД за {} попыток, "
+                            + "операции записываются по одной", maxRetries, e);
+                    applyOneByOne(likes);
+                    return;
+                }
+                // возвращаем в буфер операции, которые не были заменены более поздними
+                synchronized (pendingLock) {
+                    LinkedHashMap<FilmLike, Boolean> newerLikes = pendingLikes;
+                    pendingLikes = likes;
+                    pendingLikes.putAll(newerLikes);
+                    flushingCount = 0;
+                }
+                log.error("WriteBehindLikesFilmStorage: Не удалось записать лайки в БД, операций в буфере: {}",
+                        getPendingLikesCount(), e);
+                throw e;
+            } finally {
+                synchronized (pendingLock) {
+                    flushingCount = 0;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Записывает операции по одной, операции с ошибкой записи отбрасываются.
+     * Вызывается под flushLock.
+     */
+    private void applyOneByOne(LinkedHashMap<FilmLike, Boolean> likes) {
+        int droppedCount = 0;
+        for (Map.Entry<FilmLike, Boolean> entry : likes.entrySet()) {
+            FilmLike like = entry.getKey();
+            try {
+                if (entry.getValue()) {
+                    delegate.applyLikes(List.of(like), List.of());
+                } else {
+                    delegate.applyLikes(List.of(), List.of(like));
+                }
+            } catch (RuntimeException e) {
+                droppedCount++;
+                log.error("WriteBehindLikesFilmStorage: Операция с лайком {} отброшена, добавление: {}",
+                        like, entry.getValue(), e);
+            }
+        }
+        log.info("WriteBehindLikesFilmStorage: Записано по одной операций с лайками: {}, отброшено: {}",
+                likes.size() - droppedCount, droppedCount);
+    }
+
+    /**
+     * Останавливает планировщик и записывает буфер в БД, повторяя запись не более maxRetries раз.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        for (int attempt = 0; attempt < maxRetries && getPendingLikesCount() > 0; attempt++) {
+            try {
+                flush();
+            } catch (RuntimeException ignored) {
+                // операции остались в буфере, последняя попытка записывает их по одной
+            }
+        }
+        log.info("WriteBehindLikesFilmStorage: Буфер лайков записан в БД при остановке приложения");
+    }
+
+    private void enqueue(FilmLike like, boolean isAdded) {
+        if (tryEnqueue(like, isAdded)) {
+            return;
+        }
+        // операция еще не принята, поэтому ошибка записи буфера передается вызывающему как отказ в операции
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            throw new ServiceUnavailableException("WriteBehindLikesFilmStorage: Буфер лайков заполнен и не может "
+                    + "быть записан в БД, операция с лайком не принята");
+        }
+        if (!tryEnqueue(like, isAdded)) {
+            throw new ServiceUnavailableException("WriteBehindLikesFilmStorage: Буфер лайков заполнен, "
+                    + "операция с лайком не принята");
+        }
+    }
+
+    /**
+     * Помещает операцию в буфер, если в нем есть место. Замена операции над той же парой место не занимает.
+     */
+    private boolean tryEnqueue(FilmLike like, boolean isAdded) {
+        synchronized (pendingLock) {
+            if (!pendingLikes.containsKey(like) && pendingLikes.size() + flushingCount >= capacity) {
+                return false;
+            }
+            pendingLikes.put(like, isAdded);
+            if (pendingLikes.size() == batchSize) {
+                scheduleFlush(0L);
+            } else {
+                scheduleFlush(maxDelay.toMillis());
+            }
+            return true;
+        }
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        // вызывается под pendingLock
+        if (flushScheduled && delayMillis > 0L) {
+            return;
+        }
+        flushScheduled = true;
+        scheduler.schedule(this::scheduledFlush, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduledFlush() {
+        synchronized (pendingLock) {
+            flushScheduled = false;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // операции остались в буфере, повторная попытка при следующем сбросе
+            synchronized (pendingLock) {
+                if (!pendingLikes.isEmpty()) {
+                    scheduleFlush(maxDelay.toMillis());
+                }
+            }
+        }
+    }
+
+    @Override
+    public Film addFilm(Film film) {
+        return delegate.addFilm(film);
+    }
+
+    @Override
+    public List<Long> addFilms(List<Film> films) {
+        return delegate.addFilms(films);
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        return delegate.updateFilm(film);
+    }
+
+    @Override
+    public List<Film> getAllFilms() {
+        return delegate.getAllFilms();
+    }
+
+    @Override
+    public List<Film> getFilmsPage(long afterId, int limit) {
+        return delegate.getFilmsPage(afterId, limit);
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> action) {
+        delegate.streamAllFilms(action);
+    }
+
+    @Override
+    public Film getFilmById(Long filmId) {
+        return delegate.getFilmById(filmId);
+    }
+
+    @Override
+    public Set<Long> getExistingFilmsIds(Collection<Long> filmsIds) {
+        return delegate.getExistingFilmsIds(filmsIds);
+    }
+
+    @Override
+    public void applyLikes(List<FilmLike> addedLikes, List<FilmLike> removedLikes) {
+        delegate.applyLikes(addedLikes, removedLikes);
+    }
+
+    @Override
+    public List<Film> getTopFilms(int limit) {
+        return delegate.getTopFilms(limit);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> filmsIds) {
+        return delegate.getFilmsByIds(filmsIds);
+    }
+
+    @Override
+    public Map<Long, Long> getFilmsLikesCounts() {
+        return delegate.getFilmsLikesCounts();
+    }
+
+    @Override
+    public void streamAllLikes(Consumer<FilmLike> action) {
+        delegate.streamAllLikes(action);
+    }
+}
@@ -1,7 +1,9 @@
 package ru.yandex.practicum.filmorate.dal.mappers;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.GenreMpaDictionary;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 
@@ -11,20 +13,26 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 
 /**
- * Класс mapper данных типа Film
+ * Класс mapper данных типа Film.
+ * MPA рейтинг берётся из справочника по mpa_rating_id, join с таблицей mpa_rating не требуется.
  */
 @Component
 public class FilmRowMapper implements RowMapper<Film> {
+    private static final MpaRating EMPTY_MPA = MpaRating.of(null, null);
+
+    private final GenreMpaDictionary dictionary;
+
+    @Autowired
+    public FilmRowMapper(GenreMpaDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
     @Override
     public Film mapRow(ResultSet rs, int rowNum) throws SQLException {
-        Integer ratingId = rs.getInt("mpa_rating_id");
-        if (ratingId == 0) {
-            ratingId = null;
+        MpaRating mpa = dictionary.getMpaRating(rs.getInt("mpa_rating_id"));
+        if (mpa == null) {
+            mpa = EMPTY_MPA;
         }
-        MpaRating mpa = MpaRating.of(
-                ratingId,
-                rs.getString("mpa_rating_name")
-        );
 
         return Film.of(
                 rs.getLong("id"),
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.event;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+/**
+ * Событие повторной загрузки справочника жанров и MPA рейтингов из БД.
+ * Публикуется справочником после замены его содержимого; объекты Genre и MpaRating, полученные до загрузки,
+ * устаревают.
+ */
+@Value
+@RequiredArgsConstructor(staticName = "of")
+public class DictionaryReloadedEvent {
+    int genresCount;
+    int mpaRatingsCount;
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.event;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+
+import java.util.List;
+
+/**
+ * Событие изменения лайков фильмов.
+ * Публикуется хранилищем и содержит только лайки, фактически добавленные в БД или удаленные из нее.
+ */
+@Value
+@RequiredArgsConstructor(staticName = "of")
+public class FilmLikesChangedEvent {
+    List<FilmLike> addedLikes;
+    List<FilmLike> removedLikes;
+
+    public static FilmLikesChangedEvent added(FilmLike like) {
+        return of(List.of(like), List.of());
+    }
+
+    public static FilmLikesChangedEvent removed(FilmLike like) {
+        return of(List.of(), List.of(like));
+    }
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.event;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.Friendship;
+
+import java.util.List;
+
+/**
+ * Событие изменения дружбы пользователей.
+ * Публикуется хранилищем и содержит только записи, фактически добавленные в user_friend или удаленные из нее.
+ */
+@Value
+@RequiredArgsConstructor(staticName = "of")
+public class FriendshipsChangedEvent {
+    List<Friendship> addedFriendships;
+    List<Friendship> removedFriendships;
+
+    public static FriendshipsChangedEvent added(Friendship friendship) {
+        return of(List.of(friendship), List.of());
+    }
+
+    public static FriendshipsChangedEvent removed(Friendship friendship) {
+        return of(List.of(), List.of(friendship));
+    }
+}
@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.index;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.event.FilmLikesChangedEvent;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Класс рейтинга фильмов по количеству лайков, хранящийся в памяти приложения.
+ * Фильмы упорядочены по убыванию количества лайков, при равенстве - по возрастанию ID.
+ * Заполняется из film_like при старте приложения и обновляется на месте по событиям FilmLikesChangedEvent
+ * после фиксации транзакции, в которой лайки были записаны в БД.
+ * Изменения одного фильма сериализуются через ConcurrentHashMap.compute, чтение рейтинга не блокируется.
+ * Периодически (filmorate.leaderboard.check-interval) рейтинг сверяется с БД, расхождения исправляются.
+ */
+@Slf4j
+@Component
+public class FilmLikesLeaderboard {
+    private static final Comparator<Entry> RANKING_ORDER = Comparator.comparingLong(Entry::likes)
+            .reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private final FilmStorage filmStorage;
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(RANKING_ORDER);
+    // расхождения предыдущей сверки: ID фильма и количество лайков в БД
+    private Map<Long, Long> previousMismatches = Map.of();
+
+    @Autowired
+    public FilmLikesLeaderboard(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @PostConstruct
+    public void load() {
+        Map<Long, Long> likesCounts = filmStorage.getFilmsLikesCounts();
+        entries.clear();
+        ranking.clear();
+        likesCounts.forEach(this::setLikes);
+        log.info("FilmLikesLeaderboard: Рейтинг фильмов загружен, фильмов: {}", entries.size());
+    }
+
+    public void addFilm(long filmId) {
+        entries.computeIfAbsent(filmId, id -> {
+            Entry entry = new Entry(id, 0L);
+            ranking.add(entry);
+            return entry;
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilmLikesChanged(FilmLikesChangedEvent event) {
+        for (FilmLike like : event.getAddedLikes()) {
+            changeLikes(like.getFilmId(), 1L);
+        }
+        for (FilmLike like : event.getRemovedLikes()) {
+            changeLikes(like.getFilmId(), -1L);
+        }
+    }
+
+    public void changeLikes(long filmId, long delta) {
+        entries.compute(filmId, (id, oldEntry) -> {
+            long likes = (oldEntry == null) ? 0L : oldEntry.likes();
+            return replace(oldEntry, new Entry(id, Math.max(0L, likes + delta)));
+        });
+    }
+
+    /**
+     * Возвращает ID первых limit фильмов рейтинга.
+     * Во время обновления фильм может кратковременно присутствовать в рейтинге дважды, дубли пропускаются.
+     */
+    public List<Long> getTopFilmsIds(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        List<Long> filmsIds = new ArrayList<>(Math.min(limit, entries.size()));
+        Set<Long> seen = new HashSet<>();
+        for (Entry entry : ranking) {
+            if (filmsIds.size() >= limit) {
+                break;
+            }
+            if (seen.add(entry.filmId())) {
+                filmsIds.add(entry.filmId());
+            }
+        }
+        return filmsIds;
+    }
+
+    /**
+     * Сверяет рейтинг с данными БД.
+     * Возвращает ID фильмов, количество лайков которых в памяти отличается от film_like, с количеством из БД.
+     * При параллельной записи лайков возможны кратковременные расхождения.
+     */
+    public Map<Long, Long> checkConsistency() {
+        Map<Long, Long> likesCounts = filmStorage.getFilmsLikesCounts();
+        Map<Long, Long> mismatches = new HashMap<>();
+        likesCounts.forEach((filmId, likes) -> {
+            Entry entry = entries.get(filmId);
+            if (entry == null || entry.likes() != likes) {
+                mismatches.put(filmId, likes);
+            }
+        });
+        for (Long filmId : entries.keySet()) {
+            if (!likesCounts.containsKey(filmId)) {
+                mismatches.put(filmId, 0L);
+            }
+        }
+        if (!mismatches.isEmpty()) {
+            log.warn("FilmLikesLeaderboard: Рейтинг расходится с БД для фильмов с ID: {}", mismatches.keySet());
+        }
+        return mismatches;
+    }
+
+    /**
+     * Сверяет рейтинг с БД и исправляет количество лайков фильмов, расхождение которых с тем же значением в БД
+     * найдено и при предыдущей сверке: расхождение одной сверки может быть вызвано записью лайков,
+     * событие о которой еще не обработано.
+     */
+    @Scheduled(initialDelayString = "${filmorate.leaderboard.check-interval:10m}",
+            fixedDelayString = "${filmorate.leaderboard.check-interval:10m}")
+    public synchronized void verifyConsistency() {
+        Map<Long, Long> mismatches = checkConsistency();
+        int repairedCount = 0;
+        for (Map.Entry<Long, Long> mismatch : mismatches.entrySet()) {
+            if (mismatch.getValue().equals(previousMismatches.get(mismatch.getKey()))) {
+                setLikes(mismatch.getKey(), mismatch.getValue());
+                repairedCount++;
+            }
+        }
+        previousMismatches = mismatches;
+        if (repairedCount > 0) {
+            log.warn("FilmLikesLeaderboard: Исправлено количество лайков фильмов по данным БД: {}", repairedCount);
+        }
+    }
+
+    private void setLikes(long filmId, long likes) {
+        entries.compute(filmId, (id, oldEntry) -> replace(oldEntry, new Entry(id, likes)));
+    }
+
+    private Entry replace(Entry oldEntry, Entry newEntry) {
+        // сначала добавляем новую запись, чтобы при чтении фильм не пропадал из рейтинга
+        ranking.add(newEntry);
+        if (oldEntry != null && !oldEntry.equals(newEntry)) {
+            ranking.remove(oldEntry);
+        }
+        return newEntry;
+    }
+
+    private record Entry(long filmId, long likes) {
+    }
+}
@@ -0,0 +1,321 @@
+package ru.yandex.practicum.filmorate.index;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.event.FilmLikesChangedEvent;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Класс рекомендаций фильмов на основе лайков похожих пользователей, хранящийся в памяти приложения.
+ * Для каждого пользователя хранится отсортированный массив long с ID лайкнутых фильмов,
+ * для каждого фильма - такой же массив ID лайкнувших его пользователей (обратный индекс).
+ * Массивы не изменяются после публикации: запись создает новый массив через ConcurrentHashMap.compute,
+ * поэтому чтение выполняется без блокировок.
+ * Похожесть пользователей - коэффициент Жаккара множеств лайков: |A ∩ B| / |A ∪ B|.
+ * Кандидаты в похожие ищутся по обратному индексу только среди пользователей, лайкнувших те же фильмы.
+ * Заполняется из film_like при старте приложения и обновляется по событиям FilmLikesChangedEvent
+ * после фиксации транзакции.
+ */
+@Slf4j
+@Component
+public class FilmRecommender {
+    private static final long[] NO_IDS = new long[0];
+    // количество просматриваемых записей обратного индекса при поиске похожих пользователей
+    private static final int MAX_EXPANSIONS = 200_000;
+    private static final Comparator<Neighbour> SIMILARITY_ORDER = Comparator.comparingDouble(Neighbour::similarity)
+            .reversed()
+            .thenComparingLong(Neighbour::userId);
+    private static final Comparator<Recommendation> RANKING_ORDER = Comparator.comparingDouble(Recommendation::score)
+            .reversed()
+            .thenComparingLong(Recommendation::filmId);
+
+    private final FilmStorage filmStorage;
+    private final ConcurrentHashMap<Long, long[]> likes = new ConcurrentHashMap<>();
+    // обратный индекс: для каждого фильма - ID пользователей, лайкнувших его
+    private final ConcurrentHashMap<Long, long[]> likers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FilmRecommender(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @PostConstruct
+    public void load() {
+        likes.clear();
+        likers.clear();
+        LikesLoader loader = new LikesLoader();
+        filmStorage.streamAllLikes(loader::accept);
+        loader.finish();
+        loadLikers();
+        log.info("FilmRecommender: Лайки загружены, пользователей: {}, фильмов: {}", likes.size(), likers.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilmLikesChanged(FilmLikesChangedEvent event) {
+        for (FilmLike like : event.getAddedLikes()) {
+            addLike(like.getUserId(), like.getFilmId());
+        }
+        for (FilmLike like : event.getRemovedLikes()) {
+            removeLike(like.getUserId(), like.getFilmId());
+        }
+    }
+
+    /**
+     * Добавляет лайк. Обратный индекс фильма обновляется внутри compute по userId,
+     * поэтому изменения одного пользователя согласованы в обоих индексах.
+     */
+    public void addLike(long userId, long filmId) {
+        likes.compute(userId, (id, userLikes) -> {
+            long[] newLikes = withId(userLikes, filmId);
+            if (newLikes != userLikes) {
+                likers.compute(filmId, (fid, filmLikers) -> withId(filmLikers, userId));
+            }
+            return newLikes;
+        });
+    }
+
+    public void removeLike(long userId, long filmId) {
+        likes.computeIfPresent(userId, (id, userLikes) -> {
+            long[] newLikes = withoutId(userLikes, filmId);
+            if (newLikes != userLikes) {
+                likers.computeIfPresent(filmId, (fid, filmLikers) -> withoutId(filmLikers, userId));
+            }
+            return newLikes;
+        });
+    }
+
+    /**
+     * Возвращает отсортированный по возрастанию массив ID фильмов, лайкнутых пользователем.
+     * Массив разделяется с индексом и не должен изменяться вызывающим кодом.
+     */
+    public long[] getLikedFilmsIds(long userId) {
+        return likes.getOrDefault(userId, NO_IDS);
+    }
+
+    public int getLikesCount(long userId) {
+        return getLikedFilmsIds(userId).length;
+    }
+
+    /**
+     * Возвращает до limit рекомендаций фильмов для пользователя по убыванию оценки, при равенстве - по возрастанию ID.
+     * Выбирается до neighbours пользователей с наибольшей похожестью, оценка фильма - сумма похожести
+     * тех из них, кто лайкнул фильм. Фильмы, лайкнутые самим пользователем, не рекомендуются.
+     */
+    public List<Recommendation> getRecommendations(long userId, int limit, int neighbours) {
+        long[] userLikes = getLikedFilmsIds(userId);
+        if (userLikes.length == 0 || limit <= 0 || neighbours <= 0) {
+            return List.of();
+        }
+
+        Map<Long, Double> scores = new HashMap<>();
+        for (Neighbour neighbour : findSimilarUsers(userId, userLikes, neighbours)) {
+            // фильмы соседа, не лайкнутые пользователем: разность отсортированных массивов
+            long[] neighbourLikes = neighbour.likes();
+            int i = 0;
+            for (long filmId : neighbourLikes) {
+                while (i < userLikes.length && userLikes[i] < filmId) {
+                    i++;
+                }
+                if (i == userLikes.length || userLikes[i] != filmId) {
+                    scores.merge(filmId, neighbour.similarity(), Double::sum);
+                }
+            }
+        }
+
+        PriorityQueue<Recommendation> top = new PriorityQueue<>(limit + 1, RANKING_ORDER.reversed());
+        scores.forEach((filmId, score) -> {
+            Recommendation recommendation = new Recommendation(filmId, score);
+            if (top.size() < limit) {
+                top.add(recommendation);
+            } else if (RANKING_ORDER.compare(recommendation, top.peek()) < 0) {
+                top.poll();
+                top.add(recommendation);
+            }
+        });
+        List<Recommendation> recommendations = new ArrayList<>(top);
+        recommendations.sort(RANKING_ORDER);
+        return recommendations;
+    }
+
+    /**
+     * Ищет похожих пользователей по обратному индексу фильмов, лайкнутых пользователем:
+     * количество повторов пользователя среди лайкнувших эти фильмы - размер пересечения множеств лайков.
+     * Фильмы просматриваются от наименее популярных, всего не более MAX_EXPANSIONS записей;
+     * если бюджет исчерпан, пересечение с каждым кандидатом вычисляется слиянием отсортированных массивов.
+     */
+    private List<Neighbour> findSimilarUsers(long userId, long[] userLikes, int neighbours) {
+        long[][] filmsLikers = new long[userLikes.length][];
+        for (int i = 0; i < userLikes.length; i++) {
+            filmsLikers[i] = likers.getOrDefault(userLikes[i], NO_IDS);
+        }
+        Arrays.sort(filmsLikers, Comparator.comparingInt(filmLikers -> filmLikers.length));
+
+        long[] buffer = new long[Math.min(MAX_EXPANSIONS, 1024)];
+        int size = 0;
+        boolean truncated = false;
+        for (long[] filmLikers : filmsLikers) {
+            int count = Math.min(filmLikers.length, MAX_EXPANSIONS - size);
+            if (count < filmLikers.length) {
+                truncated = true;
+            }
+            if (size + count > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + count));
+            }
+            System.arraycopy(filmLikers, 0, buffer, size, count);
+            size += count;
+            if (truncated) {
+                break;
+            }
+        }
+        Arrays.sort(buffer, 0, size);
+
+        // count repeats of each candidate, keep top neighbours in a heap with the least similar on top
+        PriorityQueue<Neighbour> top = new PriorityQueue<>(neighbours + 1, SIMILARITY_ORDER.reversed());
+        int i = 0;
+        while (i < size) {
+            int j = i + 1;
+            while (j < size && buffer[j] == buffer[i]) {
+                j++;
+            }
+            long candidateId = buffer[i];
+            long[] candidateLikes = getLikedFilmsIds(candidateId);
+            int common = truncated ? intersectionCount(userLikes, candidateLikes) : j - i;
+            i = j;
+            if (candidateId == userId || common == 0 || common == candidateLikes.length) {
+                // пользователю нечего рекомендовать из лайков соседа
+                continue;
+            }
+            double similarity = (double) common / (userLikes.length + candidateLikes.length - common);
+            Neighbour neighbour = new Neighbour(candidateId, similarity, candidateLikes);
+            if (top.size() < neighbours) {
+                top.add(neighbour);
+            } else if (SIMILARITY_ORDER.compare(neighbour, top.peek()) < 0) {
+                top.poll();
+                top.add(neighbour);
+            }
+        }
+        return new ArrayList<>(top);
+    }
+
+    /**
+     * Строит обратный индекс по загруженным массивам лайков: подсчет лайков фильмов,
+     * заполнение массивов лайкнувших пользователей и их сортировка.
+     */
+    private void loadLikers() {
+        Map<Long, int[]> likersCounts = new HashMap<>();
+        for (long[] userLikes : likes.values()) {
+            for (long filmId : userLikes) {
+                likersCounts.computeIfAbsent(filmId, id -> new int[1])[0]++;
+            }
+        }
+        Map<Long, long[]> loadedLikers = new HashMap<>(likersCounts.size() * 2);
+        likersCounts.forEach((filmId, count) -> loadedLikers.put(filmId, new long[count[0]]));
+        likes.forEach((userId, userLikes) -> {
+            for (long filmId : userLikes) {
+                int[] count = likersCounts.get(filmId);
+                loadedLikers.get(filmId)[--count[0]] = userId;
+            }
+        });
+        loadedLikers.forEach((filmId, filmLikers) -> {
+            Arrays.sort(filmLikers);
+            likers.put(filmId, filmLikers);
+        });
+    }
+
+    private static int intersectionCount(long[] sortedIds, long[] otherSortedIds) {
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < sortedIds.length && j < otherSortedIds.length) {
+            if (sortedIds[i] < otherSortedIds[j]) {
+                i++;
+            } else if (sortedIds[i] > otherSortedIds[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        return common;
+    }
+
+    /**
+     * Возвращает массив с добавленным ID или тот же массив, если ID уже есть.
+     */
+    private static long[] withId(long[] sortedIds, long id) {
+        if (sortedIds == null) {
+            return new long[]{id};
+        }
+        int idx = Arrays.binarySearch(sortedIds, id);
+        if (idx >= 0) {
+            return sortedIds;
+        }
+        int insertionIdx = -idx - 1;
+        long[] newIds = new long[sortedIds.length + 1];
+        System.arraycopy(sortedIds, 0, newIds, 0, insertionIdx);
+        newIds[insertionIdx] = id;
+        System.arraycopy(sortedIds, insertionIdx, newIds, insertionIdx + 1, sortedIds.length - insertionIdx);
+        return newIds;
+    }
+
+    /**
+     * Возвращает массив без ID, тот же массив, если ID нет, или null, если массив стал пустым.
+     */
+    private static long[] withoutId(long[] sortedIds, long id) {
+        int idx = Arrays.binarySearch(sortedIds, id);
+        if (idx < 0) {
+            return sortedIds;
+        }
+        if (sortedIds.length == 1) {
+            return null;
+        }
+        long[] newIds = new long[sortedIds.length - 1];
+        System.arraycopy(sortedIds, 0, newIds, 0, idx);
+        System.arraycopy(sortedIds, idx + 1, newIds, idx, sortedIds.length - idx - 1);
+        return newIds;
+    }
+
+    /**
+     * Собирает массивы лайков из потока лайков, отсортированного по user_id и film_id.
+     */
+    private class LikesLoader {
+        private long userId;
+        private long[] buffer = new long[16];
+        private int size;
+
+        void accept(FilmLike like) {
+            if (size > 0 && like.getUserId() != userId) {
+                finish();
+            }
+            userId = like.getUserId();
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = like.getFilmId();
+        }
+
+        void finish() {
+            if (size > 0) {
+                likes.put(userId, Arrays.copyOf(buffer, size));
+                size = 0;
+            }
+        }
+    }
+
+    private record Neighbour(long userId, double similarity, long[] likes) {
+    }
+
+    /**
+     * Рекомендуемый фильм и его оценка - сумма похожести пользователей, лайкнувших фильм.
+     */
+    public record Recommendation(long filmId, double score) {
+    }
+}
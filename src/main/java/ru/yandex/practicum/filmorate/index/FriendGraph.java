@@ -0,0 +1,520 @@
+package ru.yandex.practicum.filmorate.index;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.event.FriendshipsChangedEvent;
+import ru.yandex.practicum.filmorate.exception.SearchLimitExceededException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Класс графа дружбы пользователей, хранящийся в памяти приложения.
+ * Для каждого пользователя хранится отсортированный массив long с ID его друзей (связи из user_friend направленные)
+ * и такой же массив ID пользователей, добавивших его в друзья, - для обхода графа в обратном направлении.
+ * Массивы не изменяются после публикации: запись создает новый массив через ConcurrentHashMap.compute,
+ * поэтому чтение выполняется без блокировок и без упаковки ID в Long.
+ * Заполняется из user_friend при старте приложения и обновляется по событиям FriendshipsChangedEvent
+ * после фиксации транзакции.
+ * Отключается свойством filmorate.friend-graph.enabled=false, тогда запросы выполняются к БД.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.friend-graph.enabled", havingValue = "true", matchIfMissing = true)
+public class FriendGraph implements MeterBinder {
+    private static final long[] NO_FRIENDS = new long[0];
+    // оценка занимаемой памяти: заголовок массива, узел ConcurrentHashMap с ключом Long и ссылка в таблице
+    private static final long ARRAY_HEADER_BYTES = 16L;
+    private static final long MAP_ENTRY_BYTES = 32L + 16L + 8L;
+    // обход друзей пользователя распараллеливается, начиная с этого количества друзей
+    private static final int PARALLEL_MIN_FRIENDS = 256;
+    private static final int PARALLEL_SORT_MIN_CANDIDATES = 1 << 16;
+    // рабочие структуры поиска пути, память которых превышает порог, не возвращаются в пул после запроса
+    private static final long MAX_RETAINED_PATH_SEARCH_CAPACITY = 1L << 22;
+    private static final int MAX_POOLED_PATH_SEARCH_STATES = 2 * Runtime.getRuntime().availableProcessors();
+    private static final Comparator<Suggestion> RANKING_ORDER = Comparator.comparingInt(Suggestion::mutualFriends)
+            .reversed()
+            .thenComparingLong(Suggestion::userId);
+
+    private final UserStorage userStorage;
+    private final ConcurrentHashMap<Long, long[]> friends = new ConcurrentHashMap<>();
+    // обратный индекс: для каждого пользователя - ID пользователей, добавивших его в друзья
+    private final ConcurrentHashMap<Long, long[]> followers = new ConcurrentHashMap<>();
+    private final AtomicLong edgesCount = new AtomicLong();
+    // пул вместо ThreadLocal: при виртуальных потоках каждый запрос выполняется в новом потоке
+    private final BlockingQueue<PathSearchState> pathSearchStates =
+            new ArrayBlockingQueue<>(MAX_POOLED_PATH_SEARCH_STATES);
+
+    @Autowired
+    public FriendGraph(UserStorage userStorage) {
+        this.userStorage = userStorage;
+    }
+
+    @PostConstruct
+    public void load() {
+        friends.clear();
+        followers.clear();
+        edgesCount.set(0L);
+        FriendsLoader loader = new FriendsLoader();
+        userStorage.streamAllFriendships(loader::accept);
+        loader.finish();
+        loadFollowers();
+        log.info("FriendGraph: Граф дружбы загружен, пользователей: {}, связей: {}, байт на связь: {}",
+                friends.size(), edgesCount.get(), String.format("%.1f", getHeapBytesPerEdge()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFriendshipsChanged(FriendshipsChangedEvent event) {
+        for (Friendship friendship : event.getAddedFriendships()) {
+            addFriend(friendship.getUserId(), friendship.getFriendId());
+        }
+        for (Friendship friendship : event.getRemovedFriendships()) {
+            removeFriend(friendship.getUserId(), friendship.getFriendId());
+        }
+    }
+
+    /**
+     * Добавляет связь userId -> friendId. Обратный индекс подписчиков friendId обновляется
+     * внутри compute по userId, поэтому изменения одного пользователя согласованы в обоих индексах.
+     */
+    public void addFriend(long userId, long friendId) {
+        friends.compute(userId, (id, userFriends) -> {
+            long[] newFriends = withId(userFriends, friendId);
+            if (newFriends != userFriends) {
+                edgesCount.incrementAndGet();
+                followers.compute(friendId, (fid, friendFollowers) -> withId(friendFollowers, userId));
+            }
+            return newFriends;
+        });
+    }
+
+    public void removeFriend(long userId, long friendId) {
+        friends.computeIfPresent(userId, (id, userFriends) -> {
+            long[] newFriends = withoutId(userFriends, friendId);
+            if (newFriends != userFriends) {
+                edgesCount.decrementAndGet();
+                followers.computeIfPresent(friendId, (fid, friendFollowers) -> withoutId(friendFollowers, userId));
+            }
+            return newFriends;
+        });
+    }
+
+    public boolean isFriend(long userId, long friendId) {
+        return Arrays.binarySearch(getFriendsIds(userId), friendId) >= 0;
+    }
+
+    /**
+     * Возвращает отсортированный по возрастанию массив ID друзей пользователя.
+     * Массив разделяется с графом и не должен изменяться вызывающим кодом.
+     */
+    public long[] getFriendsIds(long userId) {
+        return friends.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    /**
+     * Возвращает отсортированный по возрастанию массив ID пользователей, добавивших userId в друзья.
+     * Массив разделяется с графом и не должен изменяться вызывающим кодом.
+     */
+    public long[] getFollowersIds(long userId) {
+        return followers.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    public int getFriendsCount(long userId) {
+        return getFriendsIds(userId).length;
+    }
+
+    /**
+     * Возвращает отсортированный массив ID общих друзей двух пользователей.
+     * Пересечение выполняется слиянием отсортированных массивов за линейное время,
+     * выделяется только массив результата.
+     */
+    public long[] getCommonFriendsIds(long userId, long otherId) {
+        return getCommonFriendsIds(userId, otherId, Long.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Возвращает не более limit ID общих друзей двух пользователей, больших afterId, в порядке возрастания.
+     * Начальные позиции слияния находятся бинарным поиском, поэтому страницы большого пересечения
+     * не требуют повторного прохода по его началу.
+     */
+    public long[] getCommonFriendsIds(long userId, long otherId, long afterId, int limit) {
+        long[] userFriends = getFriendsIds(userId);
+        long[] otherFriends = getFriendsIds(otherId);
+        int i = firstIndexAfter(userFriends, afterId);
+        int j = firstIndexAfter(otherFriends, afterId);
+        int maxCount = Math.min(limit, Math.min(userFriends.length - i, otherFriends.length - j));
+        if (maxCount <= 0) {
+            return NO_FRIENDS;
+        }
+        long[] common = new long[maxCount];
+        int count = 0;
+        while (i < userFriends.length && j < otherFriends.length && count < maxCount) {
+            if (userFriends[i] < otherFriends[j]) {
+                i++;
+            } else if (userFriends[i] > otherFriends[j]) {
+                j++;
+            } else {
+                common[count++] = userFriends[i];
+                i++;
+                j++;
+            }
+        }
+        if (count == 0) {
+            return NO_FRIENDS;
+        }
+        return (count == maxCount) ? common : Arrays.copyOf(common, count);
+    }
+
+    /**
+     * Возвращает не более limit рекомендуемых друзей пользователя - друзей его друзей,
+     * упорядоченных по убыванию количества общих друзей, при равенстве - по возрастанию ID.
+     * Текущие друзья и сам пользователь исключаются.
+     * Просматривается не более maxExpansions связей второго уровня, поэтому для пользователей
+     * с очень большим числом друзей результат строится по части графа.
+     * Для пользователей, у которых не меньше PARALLEL_MIN_FRIENDS друзей, обход выполняется параллельно
+     * в общем ForkJoinPool: друзья делятся на непрерывные части, бюджет - поровну между частями.
+     */
+    public List<Suggestion> getFriendSuggestions(long userId, int limit, int maxExpansions) {
+        long[] userFriends = getFriendsIds(userId);
+        if (userFriends.length == 0 || limit <= 0 || maxExpansions <= 0) {
+            return List.of();
+        }
+
+        // collect candidates (with repeats) from friends of friends
+        int parts = (userFriends.length >= PARALLEL_MIN_FRIENDS)
+                ? Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), userFriends.length / PARALLEL_MIN_FRIENDS))
+                : 1;
+        int partSize = (userFriends.length + parts - 1) / parts;
+        int partBudget = Math.max(1, maxExpansions / parts);
+        IntStream partsIdxs = IntStream.range(0, parts);
+        if (parts > 1) {
+            partsIdxs = partsIdxs.parallel();
+        }
+        long[][] partsCandidates = partsIdxs
+                .mapToObj(part -> collectCandidates(userId, userFriends, part * partSize,
+                        Math.min(userFriends.length, (part + 1) * partSize), partBudget))
+                .toArray(long[][]::new);
+
+        int candidatesCount = 0;
+        for (long[] partCandidates : partsCandidates) {
+            candidatesCount += partCandidates.length;
+        }
+        long[] candidates = new long[candidatesCount];
+        int offset = 0;
+        for (long[] partCandidates : partsCandidates) {
+            System.arraycopy(partCandidates, 0, candidates, offset, partCandidates.length);
+            offset += partCandidates.length;
+        }
+        if (candidates.length >= PARALLEL_SORT_MIN_CANDIDATES) {
+            Arrays.parallelSort(candidates);
+        } else {
+            Arrays.sort(candidates);
+        }
+
+        // count repeats of each candidate, keep top limit in a heap with the worst suggestion on top
+        PriorityQueue<Suggestion> top = new PriorityQueue<>(limit + 1, RANKING_ORDER.reversed());
+        int i = 0;
+        while (i < candidates.length) {
+            int j = i + 1;
+            while (j < candidates.length && candidates[j] == candidates[i]) {
+                j++;
+            }
+            Suggestion suggestion = new Suggestion(candidates[i], j - i);
+            if (top.size() < limit) {
+                top.add(suggestion);
+            } else if (RANKING_ORDER.compare(suggestion, top.peek()) < 0) {
+                top.poll();
+                top.add(suggestion);
+            }
+            i = j;
+        }
+        List<Suggestion> suggestions = new ArrayList<>(top);
+        suggestions.sort(RANKING_ORDER);
+        return suggestions;
+    }
+
+    /**
+     * Возвращает кратчайшую цепочку друзей от fromId до toId (включительно) длиной не более maxDepth связей
+     * или пустой массив, если цепочка не найдена.
+     * Двунаправленный поиск в ширину: от fromId по друзьям, от toId по обратному индексу;
+     * на каждом шаге расширяется меньший фронт, уровень дообходится до конца для выбора кратчайшей цепочки.
+     * Просматривается не более maxExpansions связей, при превышении поиск прекращается
+     * с SearchLimitExceededException: отсутствие цепочки в этом случае не установлено.
+     * Множества посещенных вершин и фронты берутся из пула и переиспользуются между запросами.
+     */
+    public long[] findPath(long fromId, long toId, int maxDepth, int maxExpansions) {
+        if (fromId == toId) {
+            return new long[]{fromId};
+        }
+        PathSearchState state = pathSearchStates.poll();
+        if (state == null) {
+            state = new PathSearchState();
+        }
+        try {
+            return findPath(state, fromId, toId, maxDepth, maxExpansions);
+        } finally {
+            state.clear();
+            if (state.retainedCapacity() <= MAX_RETAINED_PATH_SEARCH_CAPACITY) {
+                pathSearchStates.offer(state);
+            }
+        }
+    }
+
+    private long[] findPath(PathSearchState state, long fromId, long toId, int maxDepth, int maxExpansions) {
+        state.forwardVisited.putIfAbsent(fromId, fromId, 0);
+        state.backwardVisited.putIfAbsent(toId, toId, 0);
+        state.forwardFrontier.add(fromId);
+        state.backwardFrontier.add(toId);
+        int forwardDepth = 0;
+        int backwardDepth = 0;
+        long expansions = 0L;
+
+        while (!state.forwardFrontier.isEmpty() && !state.backwardFrontier.isEmpty()
+                && forwardDepth + backwardDepth < maxDepth) {
+            boolean expandForward = state.forwardFrontier.size() <= state.backwardFrontier.size();
+            LongBuffer frontier = expandForward ? state.forwardFrontier : state.backwardFrontier;
+            LongVisitedMap visited = expandForward ? state.forwardVisited : state.backwardVisited;
+            LongVisitedMap otherVisited = expandForward ? state.backwardVisited : state.forwardVisited;
+            LongBuffer next = state.nextFrontier;
+            next.clear();
+            int depth = (expandForward ? forwardDepth : backwardDepth) + 1;
+
+            long meetingId = 0L;
+            int bestLength = Integer.MAX_VALUE;
+            for (int i = 0; i < frontier.size(); i++) {
+                long nodeId = frontier.get(i);
+                long[] neighbours = expandForward ? getFriendsIds(nodeId) : getFollowersIds(nodeId);
+                expansions += neighbours.length;
+                if (expansions > maxExpansions) {
+                    log.warn("FriendGraph: Поиск цепочки друзей от {} до {} прерван, превышен бюджет {} связей",
+                            fromId, toId, maxExpansions);
+                    throw new SearchLimitExceededException("FriendGraph: Поиск цепочки друзей от пользователя c ID: "
+                            + fromId + " до пользователя c ID: " + toId + " прерван, превышен лимит просмотра связей");
+                }
+                for (long neighbourId : neighbours) {
+                    if (!visited.putIfAbsent(neighbourId, nodeId, depth)) {
+                        continue;
+                    }
+                    if (otherVisited.contains(neighbourId)) {
+                        int length = depth + otherVisited.depthOf(neighbourId);
+                        if (length < bestLength) {
+                            bestLength = length;
+                            meetingId = neighbourId;
+                        }
+                    }
+                    next.add(neighbourId);
+                }
+            }
+            if (bestLength != Integer.MAX_VALUE) {
+                return buildPath(state, meetingId);
+            }
+
+            // next level becomes the frontier, old frontier memory is reused for the level after
+            state.nextFrontier = frontier;
+            if (expandForward) {
+                state.forwardFrontier = next;
+                forwardDepth = depth;
+            } else {
+                state.backwardFrontier = next;
+                backwardDepth = depth;
+            }
+        }
+        return NO_FRIENDS;
+    }
+
+    private static long[] buildPath(PathSearchState state, long meetingId) {
+        int forwardLength = state.forwardVisited.depthOf(meetingId);
+        int backwardLength = state.backwardVisited.depthOf(meetingId);
+        long[] path = new long[forwardLength + backwardLength + 1];
+        long nodeId = meetingId;
+        for (int i = forwardLength; i >= 0; i--) {
+            path[i] = nodeId;
+            nodeId = state.forwardVisited.parentOf(nodeId);
+        }
+        nodeId = meetingId;
+        for (int i = forwardLength + 1; i < path.length; i++) {
+            nodeId = state.backwardVisited.parentOf(nodeId);
+            path[i] = nodeId;
+        }
+        return path;
+    }
+
+    public long getEdgesCount() {
+        return edgesCount.get();
+    }
+
+    /**
+     * Оценка памяти, занимаемой графом: массивы ID и записи ConcurrentHashMap прямого и обратного индексов.
+     */
+    public long getHeapBytes() {
+        long bytes = 0L;
+        for (long[] userFriends : friends.values()) {
+            bytes += MAP_ENTRY_BYTES + ARRAY_HEADER_BYTES + (long) Long.BYTES * userFriends.length;
+        }
+        for (long[] userFollowers : followers.values()) {
+            bytes += MAP_ENTRY_BYTES + ARRAY_HEADER_BYTES + (long) Long.BYTES * userFollowers.length;
+        }
+        return bytes;
+    }
+
+    public double getHeapBytesPerEdge() {
+        long edges = edgesCount.get();
+        return (edges == 0L) ? 0.0 : (double) getHeapBytes() / edges;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("filmorate.friend.graph.edges", edgesCount, AtomicLong::get)
+                .description("Количество связей в графе дружбы")
+                .register(registry);
+        Gauge.builder("filmorate.friend.graph.users", friends, ConcurrentHashMap::size)
+                .description("Количество пользователей с друзьями в графе дружбы")
+                .register(registry);
+        Gauge.builder("filmorate.friend.graph.heap", this, FriendGraph::getHeapBytes)
+                .description("Оценка памяти, занимаемой графом дружбы")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("filmorate.friend.graph.heap.per.edge", this, FriendGraph::getHeapBytesPerEdge)
+                .description("Оценка памяти графа дружбы на одну связь")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private long[] collectCandidates(long userId, long[] userFriends, int from, int to, int budget) {
+        long[] buffer = new long[Math.max(16, Math.min(budget, 1024))];
+        int size = 0;
+        int expansions = 0;
+        for (int i = from; i < to && expansions < budget; i++) {
+            for (long candidateId : getFriendsIds(userFriends[i])) {
+                if (expansions++ >= budget) {
+                    break;
+                }
+                if (candidateId == userId || Arrays.binarySearch(userFriends, candidateId) >= 0) {
+                    continue;
+                }
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, size * 2);
+                }
+                buffer[size++] = candidateId;
+            }
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private static int firstIndexAfter(long[] sortedIds, long afterId) {
+        if (afterId == Long.MIN_VALUE) {
+            return 0;
+        }
+        int idx = Arrays.binarySearch(sortedIds, afterId);
+        return (idx >= 0) ? idx + 1 : -idx - 1;
+    }
+
+    /**
+     * Строит обратный индекс по загруженным массивам друзей: подсчет входящих связей,
+     * заполнение массивов подписчиков и их сортировка.
+     */
+    private void loadFollowers() {
+        Map<Long, int[]> followersCounts = new HashMap<>();
+        for (long[] userFriends : friends.values()) {
+            for (long friendId : userFriends) {
+                followersCounts.computeIfAbsent(friendId, id -> new int[1])[0]++;
+            }
+        }
+        Map<Long, long[]> loadedFollowers = new HashMap<>(followersCounts.size() * 2);
+        followersCounts.forEach((friendId, count) -> loadedFollowers.put(friendId, new long[count[0]]));
+        friends.forEach((userId, userFriends) -> {
+            for (long friendId : userFriends) {
+                int[] count = followersCounts.get(friendId);
+                loadedFollowers.get(friendId)[--count[0]] = userId;
+            }
+        });
+        loadedFollowers.forEach((friendId, friendFollowers) -> {
+            Arrays.sort(friendFollowers);
+            followers.put(friendId, friendFollowers);
+        });
+    }
+
+    /**
+     * Возвращает массив с добавленным ID или тот же массив, если ID уже есть.
+     */
+    private static long[] withId(long[] sortedIds, long id) {
+        if (sortedIds == null) {
+            return new long[]{id};
+        }
+        int idx = Arrays.binarySearch(sortedIds, id);
+        if (idx >= 0) {
+            return sortedIds;
+        }
+        int insertionIdx = -idx - 1;
+        long[] newIds = new long[sortedIds.length + 1];
+        System.arraycopy(sortedIds, 0, newIds, 0, insertionIdx);
+        newIds[insertionIdx] = id;
+        System.arraycopy(sortedIds, insertionIdx, newIds, insertionIdx + 1, sortedIds.length - insertionIdx);
+        return newIds;
+    }
+
+    /**
+     * Возвращает массив без ID, тот же массив, если ID нет, или null, если массив стал пустым.
+     */
+    private static long[] withoutId(long[] sortedIds, long id) {
+        int idx = Arrays.binarySearch(sortedIds, id);
+        if (idx < 0) {
+            return sortedIds;
+        }
+        if (sortedIds.length == 1) {
+            return null;
+        }
+        long[] newIds = new long[sortedIds.length - 1];
+        System.arraycopy(sortedIds, 0, newIds, 0, idx);
+        System.arraycopy(sortedIds, idx + 1, newIds, idx, sortedIds.length - idx - 1);
+        return newIds;
+    }
+
+    /**
+     * Собирает массивы друзей из потока связей, отсортированного по user_id и friend_id.
+     */
+    private class FriendsLoader {
+        private long userId;
+        private long[] buffer = new long[16];
+        private int size;
+
+        void accept(Friendship friendship) {
+            if (size > 0 && friendship.getUserId() != userId) {
+                finish();
+            }
+            userId = friendship.getUserId();
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = friendship.getFriendId();
+        }
+
+        void finish() {
+            if (size > 0) {
+                friends.put(userId, Arrays.copyOf(buffer, size));
+                edgesCount.addAndGet(size);
+                size = 0;
+            }
+        }
+    }
+
+    /**
+     * Рекомендуемый друг и количество общих с пользователем друзей.
+     */
+    public record Suggestion(long userId, int mutualFriends) {
+    }
+}
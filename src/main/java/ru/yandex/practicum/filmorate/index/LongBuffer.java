@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+
+/**
+ * Растущий массив long без упаковки значений. Очистка сохраняет выделенную память.
+ */
+final class LongBuffer {
+    private long[] values;
+    private int size;
+
+    LongBuffer(int initialCapacity) {
+        values = new long[Math.max(1, initialCapacity)];
+    }
+
+    void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    long get(int idx) {
+        return values[idx];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int capacity() {
+        return values.length;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+
+/**
+ * Множество посещенных вершин обхода графа с родителем и глубиной каждой вершины.
+ * Открытая адресация по массивам примитивов; очистка выполняется сменой поколения за O(1),
+ * поэтому память массивов переиспользуется между обходами без повторного выделения.
+ */
+final class LongVisitedMap {
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] parents = new long[INITIAL_CAPACITY];
+    private int[] depths = new int[INITIAL_CAPACITY];
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private int generation = 1;
+    private int size;
+
+    void clear() {
+        size = 0;
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    boolean contains(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Добавляет вершину, если она еще не посещена. Возвращает false, если вершина уже есть.
+     */
+    boolean putIfAbsent(long key, long parent, int depth) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int idx = hash(key) & mask;
+        while (generations[idx] == generation) {
+            if (keys[idx] == key) {
+                return false;
+            }
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        parents[idx] = parent;
+        depths[idx] = depth;
+        generations[idx] = generation;
+        size++;
+        return true;
+    }
+
+    long parentOf(long key) {
+        return parents[indexOf(key)];
+    }
+
+    int depthOf(long key) {
+        return depths[indexOf(key)];
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int idx = hash(key) & mask;
+        while (generations[idx] == generation) {
+            if (keys[idx] == key) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldParents = parents;
+        int[] oldDepths = depths;
+        int[] oldGenerations = generations;
+        int oldGeneration = generation;
+
+        int capacity = oldKeys.length * 2;
+        keys = new long[capacity];
+        parents = new long[capacity];
+        depths = new int[capacity];
+        generations = new int[capacity];
+        generation = 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGenerations[i] == oldGeneration) {
+                putIfAbsent(oldKeys[i], oldParents[i], oldDepths[i]);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
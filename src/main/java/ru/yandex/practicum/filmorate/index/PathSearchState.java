@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.index;
+
+/**
+ * Рабочие структуры двунаправленного поиска в ширину, переиспользуемые между запросами через пул FriendGraph.
+ */
+final class PathSearchState {
+    private static final int INITIAL_FRONTIER_CAPACITY = 256;
+
+    final LongVisitedMap forwardVisited = new LongVisitedMap();
+    final LongVisitedMap backwardVisited = new LongVisitedMap();
+    LongBuffer forwardFrontier = new LongBuffer(INITIAL_FRONTIER_CAPACITY);
+    LongBuffer backwardFrontier = new LongBuffer(INITIAL_FRONTIER_CAPACITY);
+    LongBuffer nextFrontier = new LongBuffer(INITIAL_FRONTIER_CAPACITY);
+
+    void clear() {
+        forwardVisited.clear();
+        backwardVisited.clear();
+        forwardFrontier.clear();
+        backwardFrontier.clear();
+        nextFrontier.clear();
+    }
+
+    long retainedCapacity() {
+        return (long) forwardVisited.capacity() + backwardVisited.capacity() + forwardFrontier.capacity()
+                + backwardFrontier.capacity() + nextFrontier.capacity();
+    }
+}
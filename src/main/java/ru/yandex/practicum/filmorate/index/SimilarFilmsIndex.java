@@ -0,0 +1,391 @@
+package ru.yandex.practicum.filmorate.index;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.event.FilmLikesChangedEvent;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Класс индекса похожих фильмов, хранящийся в памяти приложения.
+ * Для каждого фильма хранится не более neighbours похожих фильмов, упорядоченных по убыванию оценки:
+ * количество пользователей, лайкнувших оба фильма, плюс genreWeight за каждый общий жанр.
+ * Кандидаты в похожие - фильмы, имеющие хотя бы один общий лайк.
+ * Индекс полностью перестраивается при старте приложения и периодически (filmorate.similar-films.rebuild-interval)
+ * по массивам примитивов, фильмы обрабатываются параллельно. Между перестроениями оценки обновляются
+ * по событиям FilmLikesChangedEvent после фиксации транзакции: лайки пользователя берутся из FilmRecommender
+ * в момент события. Обновления выполняются по порядку в отдельном потоке, а не в потоке запроса, записавшего лайк;
+ * при переполнении очереди обновления отбрасываются до следующего перестроения.
+ * Списки соседей не изменяются после публикации, чтение выполняется без блокировок.
+ */
+@Slf4j
+@Component
+public class SimilarFilmsIndex {
+    private static final Neighbour[] NO_NEIGHBOURS = new Neighbour[0];
+    // пользователи с большим количеством лайков дают квадратичное число пар и мало информации о похожести
+    private static final int MAX_USER_LIKES = 2000;
+    private static final int MAX_PENDING_UPDATES = 10_000;
+    private static final Comparator<Neighbour> RANKING_ORDER = Comparator.comparingDouble(Neighbour::score)
+            .reversed()
+            .thenComparingLong(Neighbour::filmId);
+
+    private final FilmStorage filmStorage;
+    private final FilmRecommender recommender;
+    private final int neighbours;
+    private final double genreWeight;
+    private final ConcurrentHashMap<Long, Neighbour[]> similarFilms = new ConcurrentHashMap<>();
+    private volatile Map<Long, Long> genresMasks = Map.of();
+    private final ThreadPoolExecutor updatesExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_UPDATES),
+            Thread.ofPlatform().name("similar-films-updates").daemon(true).factory(),
+            (task, executor) -> log.warn("SimilarFilmsIndex: Очередь обновлений переполнена, "
+                    + "изменения лайков будут учтены при следующем перестроении"));
+
+    @Autowired
+    public SimilarFilmsIndex(FilmStorage filmStorage, FilmRecommender recommender,
+                             @Value("${filmorate.similar-films.neighbours:100}") int neighbours,
+                             @Value("${filmorate.similar-films.genre-weight:0.5}") double genreWeight) {
+        this.filmStorage = filmStorage;
+        this.recommender = recommender;
+        this.neighbours = neighbours;
+        this.genreWeight = genreWeight;
+    }
+
+    /**
+     * Перестраивает индекс по film_like и film_genre.
+     * Лайки, зафиксированные во время перестроения, могут не попасть в индекс до следующего перестроения.
+     */
+    @PostConstruct
+    @Scheduled(initialDelayString = "${filmorate.similar-films.rebuild-interval:10m}",
+            fixedDelayString = "${filmorate.similar-films.rebuild-interval:10m}")
+    public synchronized void rebuild() {
+        long startNanos = System.nanoTime();
+        // films sorted by id, film index is a position in filmsIds
+        LongBuffer filmsIdsBuffer = new LongBuffer(1024);
+        LongBuffer masksBuffer = new LongBuffer(1024);
+        filmStorage.streamAllFilms(film -> {
+            filmsIdsBuffer.add(film.getId());
+            masksBuffer.add(genresMask(film));
+        });
+        long[] filmsIds = toArray(filmsIdsBuffer);
+        long[] masks = toArray(masksBuffer);
+        int filmsCount = filmsIds.length;
+
+        // likes grouped by user: films of user u are userFilms[userOffsets[u] .. userOffsets[u + 1])
+        LikesCollector collector = new LikesCollector(filmsIds);
+        filmStorage.streamAllLikes(collector::accept);
+        int[] userOffsets = collector.userOffsets();
+        int[] userFilms = collector.userFilms();
+        int usersCount = userOffsets.length - 1;
+
+        // transposed: users of film f are filmUsers[filmOffsets[f] .. filmOffsets[f + 1])
+        int[] filmOffsets = new int[filmsCount + 1];
+        for (int filmIdx : userFilms) {
+            filmOffsets[filmIdx + 1]++;
+        }
+        for (int f = 0; f < filmsCount; f++) {
+            filmOffsets[f + 1] += filmOffsets[f];
+        }
+        int[] filmUsers = new int[userFilms.length];
+        int[] fillPositions = Arrays.copyOf(filmOffsets, filmsCount);
+        for (int u = 0; u < usersCount; u++) {
+            for (int k = userOffsets[u]; k < userOffsets[u + 1]; k++) {
+                filmUsers[fillPositions[userFilms[k]]++] = u;
+            }
+        }
+
+        int parts = Math.max(1, Math.min(filmsCount, 4 * ForkJoinPool.getCommonPoolParallelism()));
+        int partSize = (filmsCount + parts - 1) / parts;
+        Neighbour[][] neighboursByFilm = new Neighbour[filmsCount][];
+        IntStream.range(0, parts).parallel().forEach(part -> {
+            // per-part scratch: co-like counters indexed by film index and the list of touched films
+            int[] coLikes = new int[filmsCount];
+            int[] touched = new int[filmsCount];
+            for (int f = part * partSize; f < Math.min(filmsCount, (part + 1) * partSize); f++) {
+                int touchedCount = 0;
+                for (int k = filmOffsets[f]; k < filmOffsets[f + 1]; k++) {
+                    int u = filmUsers[k];
+                    if (userOffsets[u + 1] - userOffsets[u] > MAX_USER_LIKES) {
+                        continue;
+                    }
+                    for (int m = userOffsets[u]; m < userOffsets[u + 1]; m++) {
+                        int other = userFilms[m];
+                        if (other != f && coLikes[other]++ == 0) {
+                            touched[touchedCount++] = other;
+                        }
+                    }
+                }
+                neighboursByFilm[f] = selectTop(f, filmsIds, masks, coLikes, touched, touchedCount);
+            }
+        });
+
+        Map<Long, Long> newGenresMasks = new HashMap<>(filmsCount * 2);
+        for (int f = 0; f < filmsCount; f++) {
+            newGenresMasks.put(filmsIds[f], masks[f]);
+        }
+        genresMasks = newGenresMasks;
+        similarFilms.keySet().retainAll(newGenresMasks.keySet());
+        for (int f = 0; f < filmsCount; f++) {
+            if (neighboursByFilm[f].length == 0) {
+                similarFilms.remove(filmsIds[f]);
+            } else {
+                similarFilms.put(filmsIds[f], neighboursByFilm[f]);
+            }
+        }
+        log.info("SimilarFilmsIndex: Индекс похожих фильмов перестроен, фильмов: {}, лайков: {}, за {} мс",
+                filmsCount, userFilms.length, (System.nanoTime() - startNanos) / 1_000_000L);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        updatesExecutor.shutdownNow();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilmLikesChanged(FilmLikesChangedEvent event) {
+        // likes are copied now: later likes of the same user are counted by their own events
+        List<CoLikesChange> changes = toCoLikesChanges(event);
+        if (!changes.isEmpty()) {
+            updatesExecutor.execute(() -> applyCoLikesChanges(changes));
+        }
+    }
+
+    /**
+     * Обновляет общие лайки фильмов по изменениям лайков в текущем потоке.
+     */
+    public void updateCoLikes(FilmLikesChangedEvent event) {
+        applyCoLikesChanges(toCoLikesChanges(event));
+    }
+
+    /**
+     * Переводит изменения лайков в изменения общих лайков фильмов.
+     * Для каждого пользователя берутся его лайки до события: лайки из FilmRecommender без добавленных
+     * и с удаленными в событии фильмами, поэтому результат не зависит от того, обработал ли FilmRecommender
+     * это событие. Изменения одного события учитываются по очереди, как если бы лайки ставились по одному.
+     * Как и при перестроении, лайки пользователей, у которых больше MAX_USER_LIKES лайков, не учитываются.
+     */
+    private List<CoLikesChange> toCoLikesChanges(FilmLikesChangedEvent event) {
+        Map<Long, Set<Long>> likedFilmsIds = new HashMap<>();
+        for (FilmLike like : event.getAddedLikes()) {
+            likedFilmsIds.computeIfAbsent(like.getUserId(), this::copyLikedFilmsIds).remove(like.getFilmId());
+        }
+        for (FilmLike like : event.getRemovedLikes()) {
+            likedFilmsIds.computeIfAbsent(like.getUserId(), this::copyLikedFilmsIds).add(like.getFilmId());
+        }
+
+        List<CoLikesChange> changes = new ArrayList<>(event.getAddedLikes().size() + event.getRemovedLikes().size());
+        for (FilmLike like : event.getAddedLikes()) {
+            Set<Long> otherFilmsIds = likedFilmsIds.get(like.getUserId());
+            // user with the film liked must be within the rebuild limit
+            if (otherFilmsIds.size() + 1 <= MAX_USER_LIKES) {
+                changes.add(new CoLikesChange(like.getFilmId(), toArray(otherFilmsIds), 1));
+            }
+            otherFilmsIds.add(like.getFilmId());
+        }
+        for (FilmLike like : event.getRemovedLikes()) {
+            Set<Long> otherFilmsIds = likedFilmsIds.get(like.getUserId());
+            otherFilmsIds.remove(like.getFilmId());
+            if (otherFilmsIds.size() + 1 <= MAX_USER_LIKES) {
+                changes.add(new CoLikesChange(like.getFilmId(), toArray(otherFilmsIds), -1));
+            }
+        }
+        return changes;
+    }
+
+    private Set<Long> copyLikedFilmsIds(Long userId) {
+        long[] filmsIds = recommender.getLikedFilmsIds(userId);
+        Set<Long> copy = new HashSet<>(filmsIds.length * 2);
+        for (long filmId : filmsIds) {
+            copy.add(filmId);
+        }
+        return copy;
+    }
+
+    private void applyCoLikesChanges(List<CoLikesChange> changes) {
+        for (CoLikesChange change : changes) {
+            changeCoLikes(change.filmId(), change.otherFilmsIds(), change.delta());
+        }
+    }
+
+    /**
+     * Изменяет на delta количество общих лайков фильма filmId с каждым из фильмов otherFilmsIds в обоих направлениях.
+     * Фильм, отсутствующий в ограниченном списке соседей, добавляется в него с одним общим лайком,
+     * если его оценка выше худшей в списке; точные значения восстанавливает следующее перестроение.
+     */
+    public void changeCoLikes(long filmId, long[] otherFilmsIds, int delta) {
+        Map<Long, Long> masks = genresMasks;
+        long filmMask = masks.getOrDefault(filmId, 0L);
+        for (long otherId : otherFilmsIds) {
+            if (otherId == filmId) {
+                continue;
+            }
+            int sharedGenres = Long.bitCount(filmMask & masks.getOrDefault(otherId, 0L));
+            similarFilms.compute(filmId, (id, list) -> withCoLikes(list, otherId, sharedGenres, delta));
+            similarFilms.compute(otherId, (id, list) -> withCoLikes(list, filmId, sharedGenres, delta));
+        }
+    }
+
+    /**
+     * Возвращает ID не более limit фильмов, похожих на фильм, по убыванию оценки.
+     */
+    public List<Long> getSimilarFilmsIds(long filmId, int limit) {
+        Neighbour[] list = similarFilms.getOrDefault(filmId, NO_NEIGHBOURS);
+        int size = Math.min(Math.max(limit, 0), list.length);
+        List<Long> filmsIds = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            filmsIds.add(list[i].filmId());
+        }
+        return filmsIds;
+    }
+
+    private Neighbour[] selectTop(int f, long[] filmsIds, long[] masks, int[] coLikes, int[] touched,
+                                  int touchedCount) {
+        PriorityQueue<Neighbour> top = new PriorityQueue<>(neighbours + 1, RANKING_ORDER.reversed());
+        for (int i = 0; i < touchedCount; i++) {
+            int other = touched[i];
+            int sharedGenres = Long.bitCount(masks[f] & masks[other]);
+            Neighbour neighbour = new Neighbour(filmsIds[other], coLikes[other], sharedGenres,
+                    score(coLikes[other], sharedGenres));
+            coLikes[other] = 0;
+            if (top.size() < neighbours) {
+                top.add(neighbour);
+            } else if (RANKING_ORDER.compare(neighbour, top.peek()) < 0) {
+                top.poll();
+                top.add(neighbour);
+            }
+        }
+        Neighbour[] list = top.toArray(NO_NEIGHBOURS);
+        Arrays.sort(list, RANKING_ORDER);
+        return list;
+    }
+
+    private Neighbour[] withCoLikes(Neighbour[] list, long otherId, int sharedGenres, int delta) {
+        Neighbour[] oldList = (list == null) ? NO_NEIGHBOURS : list;
+        int idx = -1;
+        for (int i = 0; i < oldList.length; i++) {
+            if (oldList[i].filmId() == otherId) {
+                idx = i;
+                break;
+            }
+        }
+        int coLikes = (idx >= 0) ? oldList[idx].coLikes() + delta : delta;
+        if (idx < 0 && coLikes <= 0) {
+            return list;
+        }
+        Neighbour neighbour = new Neighbour(otherId, coLikes, sharedGenres, score(coLikes, sharedGenres));
+        if (idx < 0 && oldList.length >= neighbours
+                && RANKING_ORDER.compare(neighbour, oldList[oldList.length - 1]) >= 0) {
+            return list;
+        }
+
+        List<Neighbour> newList = new ArrayList<>(oldList.length + 1);
+        for (int i = 0; i < oldList.length; i++) {
+            if (i != idx) {
+                newList.add(oldList[i]);
+            }
+        }
+        if (coLikes > 0) {
+            newList.add(neighbour);
+        }
+        newList.sort(RANKING_ORDER);
+        if (newList.size() > neighbours) {
+            newList = newList.subList(0, neighbours);
+        }
+        return newList.isEmpty() ? null : newList.toArray(NO_NEIGHBOURS);
+    }
+
+    private double score(int coLikes, int sharedGenres) {
+        return coLikes + genreWeight * sharedGenres;
+    }
+
+    private static long genresMask(Film film) {
+        long mask = 0L;
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                // справочник жанров небольшой, жанры с ID вне диапазона маски не учитываются
+                if (genre.getId() != null && genre.getId() >= 0 && genre.getId() < Long.SIZE) {
+                    mask |= 1L << genre.getId();
+                }
+            }
+        }
+        return mask;
+    }
+
+    private static long[] toArray(Set<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long[] toArray(LongBuffer buffer) {
+        long[] values = new long[buffer.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Собирает лайки, отсортированные по user_id, в сжатые массивы индексов фильмов по пользователям.
+     */
+    private static class LikesCollector {
+        private final long[] filmsIds;
+        private int[] userOffsets = new int[1024];
+        private int[] userFilms = new int[1024];
+        private int usersCount;
+        private int likesCount;
+        private long userId;
+
+        LikesCollector(long[] filmsIds) {
+            this.filmsIds = filmsIds;
+        }
+
+        void accept(FilmLike like) {
+            int filmIdx = Arrays.binarySearch(filmsIds, like.getFilmId());
+            if (filmIdx < 0) {
+                return;
+            }
+            if (usersCount == 0 || like.getUserId() != userId) {
+                userId = like.getUserId();
+                if (usersCount + 1 == userOffsets.length) {
+                    userOffsets = Arrays.copyOf(userOffsets, userOffsets.length * 2);
+                }
+                userOffsets[usersCount++] = likesCount;
+            }
+            if (likesCount == userFilms.length) {
+                userFilms = Arrays.copyOf(userFilms, likesCount * 2);
+            }
+            userFilms[likesCount++] = filmIdx;
+        }
+
+        int[] userOffsets() {
+            int[] offsets = Arrays.copyOf(userOffsets, usersCount + 1);
+            offsets[usersCount] = likesCount;
+            return offsets;
+        }
+
+        int[] userFilms() {
+            return Arrays.copyOf(userFilms, likesCount);
+        }
+    }
+
+    private record Neighbour(long filmId, int coLikes, int sharedGenres, double score) {
+    }
+
+    private record CoLikesChange(long filmId, long[] otherFilmsIds, int delta) {
+    }
+}
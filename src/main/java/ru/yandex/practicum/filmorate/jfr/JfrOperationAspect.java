@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.jfr;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Аспект, записывающий событие JFR OperationEvent для методов хранилищ (FilmStorage, UserStorage,
+ * GenreStorage, MpaRatingStorage) и публичных методов сервисов.
+ * Поля события заполняются, только если событие будет записано, поэтому без записи JFR
+ * вызов добавляет только проверку включенности события.
+ * Отключается свойством filmorate.jfr.enabled=false.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "filmorate.jfr.enabled", havingValue = "true", matchIfMissing = true)
+public class JfrOperationAspect {
+
+    @Around("execution(* ru.yandex.practicum.filmorate.storage.*Storage.*(..))")
+    public Object recordStorage(ProceedingJoinPoint joinPoint) throws Throwable {
+        return record(joinPoint, "storage");
+    }
+
+    @Around("execution(public * ru.yandex.practicum.filmorate.service.*Service.*(..))")
+    public Object recordService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return record(joinPoint, "service");
+    }
+
+    private Object record(ProceedingJoinPoint joinPoint, String layer) throws Throwable {
+        OperationEvent event = new OperationEvent();
+        if (!event.isEnabled()) {
+            return joinPoint.proceed();
+        }
+
+        event.begin();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = joinPoint.proceed();
+            failed = false;
+            return result;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.layer = layer;
+                event.className = ClassUtils.getUserClass(joinPoint.getTarget()).getSimpleName();
+                event.method = joinPoint.getSignature().getName();
+                event.entityId = firstId(joinPoint.getArgs());
+                event.rows = rows(result);
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    private static long firstId(Object[] args) {
+        for (Object arg : args) {
+            if (arg instanceof Long id) {
+                return id;
+            }
+        }
+        return -1L;
+    }
+
+    private static int rows(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Map<?, ?> map) {
+            return map.size();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.jfr;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Фильтр, записывающий событие JFR RequestEvent для каждого HTTP-запроса.
+ * Поля события заполняются, только если событие будет записано (идет запись JFR и превышен порог).
+ * Отключается свойством filmorate.jfr.enabled=false.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.jfr.enabled", havingValue = "true", matchIfMissing = true)
+public class JfrRequestFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestEvent event = new RequestEvent();
+        event.begin();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                event.httpMethod = request.getMethod();
+                event.path = request.getRequestURI();
+                event.pattern = (pattern == null) ? null : pattern.toString();
+                event.status = response.getStatus();
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Анализатор записи JFR: сводит события RequestEvent и OperationEvent из файла .jfr в таблицы задержек
+ * по операциям - количество, ошибки, среднее, p50, p95, p99 и максимум в миллисекундах.
+ * Запросы группируются по HTTP-методу и шаблону пути, операции - по слою, классу и методу.
+ * Запуск: java -cp target/classes ru.yandex.practicum.filmorate.jfr.JfrSummary recording.jfr
+ */
+public class JfrSummary {
+    private final Map<String, Stats> requests = new TreeMap<>();
+    private final Map<String, Stats> operations = new TreeMap<>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Использование: JfrSummary <файл .jfr>");
+            System.exit(2);
+        }
+        JfrSummary summary = new JfrSummary();
+        summary.read(Path.of(args[0]));
+        summary.print();
+    }
+
+    void read(Path recording) throws IOException {
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                add(file.readEvent());
+            }
+        }
+    }
+
+    private void add(RecordedEvent event) {
+        String eventName = event.getEventType().getName();
+        long micros = event.getDuration().toNanos() / 1000L;
+        if (RequestEvent.NAME.equals(eventName)) {
+            String pattern = event.getString("pattern");
+            String key = event.getString("httpMethod") + " " + ((pattern == null) ? event.getString("path") : pattern);
+            requests.computeIfAbsent(key, k -> new Stats()).add(micros, event.getInt("status") >= 400);
+        } else if (OperationEvent.NAME.equals(eventName)) {
+            String key = event.getString("layer") + " " + event.getString("className") + "." + event.getString("method");
+            operations.computeIfAbsent(key, k -> new Stats()).add(micros, event.getBoolean("failed"));
+        }
+    }
+
+    void print() {
+        printTable("Запросы", requests);
+        printTable("Операции", operations);
+    }
+
+    private static void printTable(String title, Map<String, Stats> table) {
+        System.out.printf("%n%s%n", title);
+        System.out.printf("%-60s %9s %7s %9s %9s %9s %9s %9s%n",
+                "операция", "событий", "ошибок", "avg мс", "p50 мс", "p95 мс", "p99 мс", "max мс");
+        table.forEach((key, stats) -> {
+            long[] values = stats.sorted();
+            System.out.printf("%-60s %9d %7d %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                    key, values.length, stats.errors, stats.totalMicros / 1000.0 / values.length,
+                    percentile(values, 50.0), percentile(values, 95.0), percentile(values, 99.0),
+                    values[values.length - 1] / 1000.0);
+        });
+    }
+
+    private static double percentile(long[] sortedValues, double percentile) {
+        int idx = (int) Math.ceil(percentile / 100.0 * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, Math.min(idx, sortedValues.length - 1))] / 1000.0;
+    }
+
+    private static final class Stats {
+        private long[] values = new long[64];
+        private int size;
+        private long totalMicros;
+        private long errors;
+
+        void add(long micros, boolean failed) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = micros;
+            totalMicros += micros;
+            if (failed) {
+                errors++;
+            }
+        }
+
+        long[] sorted() {
+            long[] sortedValues = Arrays.copyOf(values, size);
+            Arrays.sort(sortedValues);
+            return sortedValues;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Событие JFR вызова метода сервиса или хранилища.
+ */
+@Name(OperationEvent.NAME)
+@Label("Filmorate Operation")
+@Category({"Filmorate", "Operation"})
+@Description("Вызов метода сервиса или хранилища")
+@StackTrace(false)
+public class OperationEvent extends Event {
+    public static final String NAME = "ru.yandex.practicum.filmorate.Operation";
+
+    @Label("Layer")
+    @Description("service или storage")
+    String layer;
+
+    @Label("Class")
+    String className;
+
+    @Label("Method")
+    String method;
+
+    @Label("Entity Id")
+    @Description("Первый аргумент-ID вызова или -1")
+    long entityId;
+
+    @Label("Rows")
+    @Description("Количество элементов в возвращенной коллекции или -1")
+    int rows;
+
+    @Label("Failed")
+    boolean failed;
+}
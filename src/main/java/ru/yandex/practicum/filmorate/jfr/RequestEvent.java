@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Событие JFR обработки HTTP-запроса контроллером.
+ */
+@Name(RequestEvent.NAME)
+@Label("Filmorate Request")
+@Category({"Filmorate", "Request"})
+@Description("Обработка HTTP-запроса")
+@StackTrace(false)
+public class RequestEvent extends Event {
+    public static final String NAME = "ru.yandex.practicum.filmorate.Request";
+
+    @Label("HTTP Method")
+    String httpMethod;
+
+    @Label("Path")
+    String path;
+
+    @Label("Pattern")
+    @Description("Шаблон пути обработчика, например /films/{id}")
+    String pattern;
+
+    @Label("Status")
+    int status;
+}
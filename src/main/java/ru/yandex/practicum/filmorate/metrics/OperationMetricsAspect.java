@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Аспект, измеряющий методы хранилищ (FilmStorage, UserStorage, GenreStorage, MpaRatingStorage)
+ * и публичные методы сервисов.
+ * Метрики с тегами layer (storage, service), class и method:
+ * filmorate.operation - время выполнения (гистограмма задается management.metrics.distribution),
+ * filmorate.operation.errors - количество исключений с тегом exception,
+ * filmorate.operation.rows - количество элементов в возвращенной коллекции.
+ * Метрики метода создаются при первом вызове и кэшируются, вызов добавляет только nanoTime и запись в счетчики.
+ * Для хранилищ-декораторов (кэш, отложенная запись) время измеряется на каждом уровне цепочки.
+ * Отключается свойством filmorate.metrics.operations.enabled=false.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "filmorate.metrics.operations.enabled", havingValue = "true", matchIfMissing = true)
+public class OperationMetricsAspect {
+    private final MeterRegistry meterRegistry;
+    private final Map<Method, OperationMeters> meters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public OperationMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* ru.yandex.practicum.filmorate.storage.*Storage.*(..))")
+    public Object measureStorage(ProceedingJoinPoint joinPoint) throws Throwable {
+        return measure(joinPoint, "storage");
+    }
+
+    @Around("execution(public * ru.yandex.practicum.filmorate.service.*Service.*(..))")
+    public Object measureService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return measure(joinPoint, "service");
+    }
+
+    private Object measure(ProceedingJoinPoint joinPoint, String layer) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        OperationMeters operationMeters = meters.get(method);
+        if (operationMeters == null) {
+            operationMeters = meters.computeIfAbsent(method, m -> new OperationMeters(layer,
+                    ClassUtils.getUserClass(joinPoint.getTarget()).getSimpleName(), m.getName()));
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            operationMeters.timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            if (result instanceof Collection<?> collection) {
+                operationMeters.rows.record(collection.size());
+            } else if (result instanceof Map<?, ?> map) {
+                operationMeters.rows.record(map.size());
+            }
+            return result;
+        } catch (Throwable e) {
+            operationMeters.timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            operationMeters.errors(e).increment();
+            throw e;
+        }
+    }
+
+    private final class OperationMeters {
+        private final Tags tags;
+        private final Timer timer;
+        private final DistributionSummary rows;
+        private final Map<Class<?>, Counter> errors = new ConcurrentHashMap<>();
+
+        OperationMeters(String layer, String className, String methodName) {
+            this.tags = Tags.of("layer", layer, "class", className, "method", methodName);
+            this.timer = Timer.builder("filmorate.operation")
+                    .tags(tags)
+                    .register(meterRegistry);
+            this.rows = DistributionSummary.builder("filmorate.operation.rows")
+                    .tags(tags)
+                    .register(meterRegistry);
+        }
+
+        Counter errors(Throwable e) {
+            return errors.computeIfAbsent(e.getClass(), exceptionClass -> Counter.builder("filmorate.operation.errors")
+                    .tags(tags)
+                    .tag("exception", exceptionClass.getSimpleName())
+                    .register(meterRegistry));
+        }
+    }
+}
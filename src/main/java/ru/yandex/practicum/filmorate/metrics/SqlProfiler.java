@@ -0,0 +1,278 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlProvider;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Профилировщик SQL-запросов, выполняемых через JdbcOperations.
+ * wrap возвращает декоратор JdbcOperations (динамический прокси), который для каждого вызова измеряет время
+ * выполнения и количество строк и накапливает статистику по отпечатку запроса: литералы заменяются на ?,
+ * списки IN (?, ?, ...) сворачиваются, пробелы нормализуются, поэтому запросы из текстовых блоков
+ * и запросы с разным количеством параметров группируются вместе.
+ * Текст SQL берется из аргументов вызова, для PreparedStatementCreator - из Connection.prepareStatement.
+ * Запросы дольше slowThreshold пишутся в лог вместе с планом H2 EXPLAIN (не чаще explainInterval
+ * для одного отпечатка и только если известны параметры запроса).
+ */
+@Slf4j
+public class SqlProfiler {
+    private static final String OTHER_STATEMENTS = "<other>";
+    private static final String UNKNOWN_STATEMENT = "<unknown>";
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern PARAMETERS_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final JdbcOperations explainJdbc;
+    private final long slowThresholdNanos;
+    private final long explainIntervalNanos;
+    private final int maxStatements;
+    private final Cache<String, String> fingerprints;
+    private final ConcurrentHashMap<String, StatementStats> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * explainJdbc - JdbcOperations без профилирования для выполнения EXPLAIN;
+     * maxStatements - количество отпечатков со своей статистикой, остальные запросы учитываются как OTHER_STATEMENTS.
+     */
+    public SqlProfiler(JdbcOperations explainJdbc, Duration slowThreshold, Duration explainInterval, int maxStatements) {
+        this.explainJdbc = explainJdbc;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.explainIntervalNanos = explainInterval.toNanos();
+        this.maxStatements = maxStatements;
+        this.fingerprints = Caffeine.newBuilder()
+                .maximumSize(10L * maxStatements)
+                .build();
+    }
+
+    public JdbcOperations wrap(JdbcOperations target) {
+        return (JdbcOperations) Proxy.newProxyInstance(JdbcOperations.class.getClassLoader(),
+                new Class<?>[]{JdbcOperations.class}, new ProfilingHandler(target));
+    }
+
+    /**
+     * Возвращает не более limit отпечатков запросов по убыванию суммарного времени выполнения.
+     */
+    public List<StatementReport> getTopStatements(int limit) {
+        List<StatementReport> reports = new ArrayList<>(statistics.size());
+        statistics.forEach((fingerprint, stats) -> reports.add(stats.report(fingerprint)));
+        reports.sort(Comparator.comparingDouble(StatementReport::totalMs).reversed());
+        return reports.subList(0, Math.min(Math.max(limit, 0), reports.size()));
+    }
+
+    public void reset() {
+        statistics.clear();
+    }
+
+    String fingerprint(String sql) {
+        if (sql == null) {
+            return UNKNOWN_STATEMENT;
+        }
+        return fingerprints.get(sql, s -> {
+            String fingerprint = STRING_LITERAL.matcher(s).replaceAll("?");
+            fingerprint = NUMBER_LITERAL.matcher(fingerprint).replaceAll("?");
+            fingerprint = PARAMETERS_LIST.matcher(fingerprint).replaceAll("(?+)");
+            fingerprint = WHITESPACE.matcher(fingerprint).replaceAll(" ").strip();
+            return fingerprint.endsWith(";") ? fingerprint.substring(0, fingerprint.length() - 1).strip() : fingerprint;
+        });
+    }
+
+    private void record(String sql, Object[] params, long nanos, long rows, boolean failed) {
+        String fingerprint = fingerprint(sql);
+        StatementStats stats = statistics.get(fingerprint);
+        if (stats == null) {
+            String key = (statistics.size() < maxStatements) ? fingerprint : OTHER_STATEMENTS;
+            stats = statistics.computeIfAbsent(key, k -> new StatementStats());
+        }
+        stats.record(nanos, rows, failed);
+
+        if (nanos >= slowThresholdNanos) {
+            log.warn("SqlProfiler: Медленный запрос {} мс, строк: {}: {}{}", nanos / 1_000_000L, rows, fingerprint,
+                    stats.tryStartExplain(explainIntervalNanos) ? explain(sql, params) : "");
+        }
+    }
+
+    private String explain(String sql, Object[] params) {
+        if (sql == null || params == null) {
+            return "";
+        }
+        String statement = sql.strip();
+        if (statement.endsWith(";")) {
+            statement = statement.substring(0, statement.length() - 1);
+        }
+        try {
+            List<String> plan = explainJdbc.query("EXPLAIN " + statement, (rs, rowNum) -> rs.getString(1), params);
+            return System.lineSeparator() + String.join(System.lineSeparator(), plan);
+        } catch (RuntimeException e) {
+            return System.lineSeparator() + "План запроса недоступен: " + e.getMessage();
+        }
+    }
+
+    private static long countRows(Object result, long callbackRows) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Map<?, ?> map) {
+            return map.size();
+        }
+        if (result instanceof Integer updated) {
+            return updated;
+        }
+        if (result instanceof int[] batch) {
+            return Arrays.stream(batch).filter(updated -> updated > 0).sum();
+        }
+        if (result instanceof int[][] batches) {
+            return Arrays.stream(batches).flatMapToInt(Arrays::stream).filter(updated -> updated > 0).sum();
+        }
+        if (result == null) {
+            return callbackRows;
+        }
+        return (result instanceof Optional<?> optional && optional.isEmpty()) ? 0L : 1L;
+    }
+
+    private final class ProfilingHandler implements InvocationHandler {
+        private final JdbcOperations target;
+
+        ProfilingHandler(JdbcOperations target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(target, args);
+            }
+
+            Call call = new Call();
+            Object[] callArgs = (args == null) ? null : args.clone();
+            if (callArgs != null) {
+                for (int i = 0; i < callArgs.length; i++) {
+                    callArgs[i] = call.intercept(callArgs[i]);
+                }
+            }
+            long startNanos = System.nanoTime();
+            try {
+                Object result = method.invoke(target, callArgs);
+                record(call.sql, call.params, System.nanoTime() - startNanos, countRows(result, call.rows), false);
+                return result;
+            } catch (InvocationTargetException e) {
+                record(call.sql, call.params, System.nanoTime() - startNanos, call.rows, true);
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Текст запроса, параметры и количество обработанных строк одного вызова JdbcOperations.
+     */
+    private static final class Call {
+        private String sql;
+        private Object[] params;
+        private long rows;
+
+        Object intercept(Object arg) {
+            if (arg instanceof String statement) {
+                if (sql == null) {
+                    sql = statement;
+                }
+                return arg;
+            }
+            if (arg instanceof String[] statements) {
+                if (sql == null && statements.length > 0) {
+                    sql = statements[0];
+                }
+                return arg;
+            }
+            if (arg instanceof Object[] values) {
+                if (params == null) {
+                    params = values;
+                }
+                return arg;
+            }
+            if (arg instanceof RowCallbackHandler handler) {
+                return (RowCallbackHandler) rs -> {
+                    rows++;
+                    handler.processRow(rs);
+                };
+            }
+            if (arg instanceof PreparedStatementCreator creator) {
+                if (creator instanceof SqlProvider provider) {
+                    sql = provider.getSql();
+                    return arg;
+                }
+                return (PreparedStatementCreator) connection -> creator.createPreparedStatement(capture(connection));
+            }
+            return arg;
+        }
+
+        private Connection capture(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if ("prepareStatement".equals(method.getName()) && args != null && args[0] instanceof String s) {
+                            sql = s;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+
+    private static final class StatementStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicLong lastExplainNanos = new AtomicLong();
+
+        void record(long nanos, long rowsCount, boolean failed) {
+            calls.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            rows.add(rowsCount);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        boolean tryStartExplain(long intervalNanos) {
+            long now = System.nanoTime();
+            long last = lastExplainNanos.get();
+            return (last == 0L || now - last >= intervalNanos) && lastExplainNanos.compareAndSet(last, now);
+        }
+
+        StatementReport report(String fingerprint) {
+            long callsCount = calls.sum();
+            double totalMs = totalNanos.sum() / 1e6;
+            return new StatementReport(fingerprint, callsCount, totalMs, (callsCount == 0) ? 0.0 : totalMs / callsCount,
+                    maxNanos.get() / 1e6, rows.sum(), errors.sum());
+        }
+    }
+
+    /**
+     * Статистика отпечатка запроса: количество вызовов, суммарное, среднее и максимальное время в мс,
+     * количество строк и ошибок.
+     */
+    public record StatementReport(String fingerprint, long calls, double totalMs, double avgMs, double maxMs,
+                                  long rows, long errors) {
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.*;
+
+/**
+ * Класс—модель данных приложения, дающий описание результату добавления одного фильма в пакетном запросе:
+ * позиция фильма в запросе, присвоенный ID либо описание ошибки.
+ */
+@Value
+@ToString
+@RequiredArgsConstructor(staticName = "of")
+public class FilmBatchItemResult {
+    int index;
+    Long id;
+    String error;
+}
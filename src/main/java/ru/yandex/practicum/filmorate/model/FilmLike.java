@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.*;
+
+/**
+ * Класс—модель данных приложения, дающий описание объекту лайк фильма от пользователя.
+ */
+@Value
+@ToString
+@RequiredArgsConstructor(staticName = "of")
+public class FilmLike {
+    Long filmId;
+    Long userId;
+}
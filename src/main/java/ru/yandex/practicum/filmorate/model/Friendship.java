@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.*;
+
+/**
+ * Класс—модель данных приложения, дающий описание объекту дружба — пользователь userId добавил в друзья friendId.
+ */
+@Value
+@ToString
+@RequiredArgsConstructor(staticName = "of")
+public class Friendship {
+    Long userId;
+    Long friendId;
+}
@@ -2,15 +2,24 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dal.GenreMpaDictionary;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.index.FilmLikesLeaderboard;
+import ru.yandex.practicum.filmorate.index.FilmRecommender;
+import ru.yandex.practicum.filmorate.index.SimilarFilmsIndex;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.validation.FilmValidation;
+import ru.yandex.practicum.filmorate.validation.PageValidation;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * FilmService — класс, который отвечает за операции с фильмами — добавление и удаление лайка,
@@ -20,109 +29,126 @@ import java.util.*;
 @Service
 @Slf4j
 public class FilmService {
+    private static final int BATCH_CHUNK_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 50000;
+    private static final int DEFAULT_MPA_RATING_ID = 1;
+    private static final int DEFAULT_RECOMMENDATIONS_SIZE = 10;
+    private static final int MAX_RECOMMENDATIONS_SIZE = 100;
+    private static final int DEFAULT_SIMILAR_FILMS_SIZE = 10;
+    private static final int MAX_SIMILAR_FILMS_SIZE = 100;
+    private static final String BATCH_ITEM_INVALID_ERROR = "Некорректные данные фильма";
+    private static final String BATCH_ITEM_SAVE_ERROR = "Не удалось сохранить фильм";
+
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final FilmLikesLeaderboard leaderboard;
+    private final GenreMpaDictionary dictionary;
+    private final FilmRecommender recommender;
+    private final SimilarFilmsIndex similarFilmsIndex;
+    private final int recommendationsNeighbours;
 
+    /**
+     * Рекомендации фильмов строятся по лайкам не более filmorate.recommendations.neighbours похожих пользователей.
+     */
     @Autowired
-    public FilmService(FilmStorage filmStorage, UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage, UserStorage userStorage, FilmLikesLeaderboard leaderboard,
+                       GenreMpaDictionary dictionary, FilmRecommender recommender, SimilarFilmsIndex similarFilmsIndex,
+                       @Value("${filmorate.recommendations.neighbours:50}") int recommendationsNeighbours) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.leaderboard = leaderboard;
+        this.dictionary = dictionary;
+        this.recommender = recommender;
+        this.similarFilmsIndex = similarFilmsIndex;
+        this.recommendationsNeighbours = recommendationsNeighbours;
     }
 
     public Film addFilm(Film film) {
         FilmValidation.validate(film);
 
-        SequencedSet<Genre> validGenres = new LinkedHashSet<>();
-        if ((film.getGenres() != null) && !(film.getGenres().isEmpty())) {
-            for (Genre genre : film.getGenres()) {
-                if ((genre.getId() < 1) || (genre.getId() > GenreValue.values().length)) {
-                    throw new NotFoundException("FilmDbService: Жанр с ID: " + genre.getId() + " не найден в приложении");
-                }
-                if ((genre.getName() != null) && (GenreValue.isCorrect(genre.getName()))) {
-                    validGenres.add(genre);
-                } else {
-                    Genre validGenre = Genre.of(genre.getId(), GenreValue.values()[genre.getId() - 1].getVal());
-                    validGenres.add(validGenre);
-                }
-            }
+        Film validFilm = normalizeFilm(film);
+        Film addedFilm = filmStorage.addFilm(validFilm);
+        leaderboard.addFilm(addedFilm.getId());
+        return addedFilm;
+    }
+
+    /**
+     * Пакетное добавление фильмов. Каждый фильм проверяется по тем же правилам, что и в addFilm.
+     * Корректные фильмы сохраняются частями по BATCH_CHUNK_SIZE, каждая часть - в отдельной транзакции.
+     * Если часть не удалось сохранить (ошибка БД откатывает всю часть), ее фильмы сохраняются по одному,
+     * и ошибка указывается только для фильмов, которые не удалось сохранить.
+     * Возвращает результат для каждого фильма в порядке запроса: присвоенный ID или описание ошибки.
+     * Описание ошибки сохранения не зависит от ошибки БД, сама ошибка записывается в лог.
+     */
+    public List<FilmBatchItemResult> addFilms(List<Film> films) {
+        if (films == null || films.isEmpty()) {
+            log.warn("FilmService: Запрос на пакетное добавление пустого списка фильмов");
+            throw new ValidationException("FilmService: Список фильмов для добавления не может быть пустым");
+        }
+        if (films.size() > MAX_BATCH_SIZE) {
+            log.warn("FilmService: Запрос на пакетное добавление более {} фильмов", MAX_BATCH_SIZE);
+            throw new ValidationException("FilmService: За один запрос можно добавить не более "
+                    + MAX_BATCH_SIZE + " фильмов");
         }
 
-        MpaRating validMpaRating;
-        if (film.getMpa() == null) {
-            validMpaRating = MpaRating.of(1, MpaRatingValue.values()[0].getVal());
-        } else {
-            if ((film.getMpa().getId() < 1) || (film.getMpa().getId() > MpaRatingValue.values().length)) {
-                throw new NotFoundException("FilmDbService: MPA рейтинг с ID: " + film.getMpa().getId() + " не найден в приложении");
+        FilmBatchItemResult[] results = new FilmBatchItemResult[films.size()];
+        List<Film> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+        List<Integer> chunkIndexes = new ArrayList<>(BATCH_CHUNK_SIZE);
+        for (int idx = 0; idx < films.size(); idx++) {
+            Film film = films.get(idx);
+            try {
+                if (film == null) {
+                    throw new ValidationException("Фильм не может быть null");
+                }
+                FilmValidation.validate(film);
+                chunk.add(normalizeFilm(film));
+                chunkIndexes.add(idx);
+            } catch (ValidationException | NotFoundException e) {
+                // ошибка проверки одного фильма не прерывает обработку пакета
+                results[idx] = FilmBatchItemResult.of(idx, null, e.getMessage());
+            } catch (RuntimeException e) {
+                log.warn("FilmService: Не удалось проверить фильм с позицией {} в пакете", idx, e);
+                results[idx] = FilmBatchItemResult.of(idx, null, BATCH_ITEM_INVALID_ERROR);
             }
-            if ((film.getMpa().getName() != null) && (MpaRatingValue.isCorrect(film.getMpa().getName()))) {
-                validMpaRating = film.getMpa();
-            } else {
-                validMpaRating = MpaRating.of(film.getMpa().getId(),
-                        MpaRatingValue.values()[film.getMpa().getId() - 1].getVal());
+            if (chunk.size() == BATCH_CHUNK_SIZE) {
+                addFilmsChunk(chunk, chunkIndexes, results);
+                chunk.clear();
+                chunkIndexes.clear();
             }
         }
-
-        Film validFilm = Film.of(
-                film.getId(),
-                film.getName(),
-                film.getDescription(),
-                film.getReleaseDate(),
-                film.getDuration(),
-                Collections.unmodifiableSequencedSet(validGenres),
-                validMpaRating
-        );
-        return filmStorage.addFilm(validFilm);
+        if (!chunk.isEmpty()) {
+            addFilmsChunk(chunk, chunkIndexes, results);
+        }
+        log.info("FilmService: Пакетное добавление фильмов завершено, фильмов в запросе: {}", films.size());
+        return Arrays.asList(results);
     }
 
     public Film updateFilm(Film film) {
         FilmValidation.validate(film);
         // Check Db
-        getFilmById(film.getId());
-
-        SequencedSet<Genre> validGenres = new LinkedHashSet<>();
-        if ((film.getGenres() != null) && !(film.getGenres().isEmpty())) {
-            for (Genre genre : film.getGenres()) {
-                if ((genre.getId() < 1) || (genre.getId() > GenreValue.values().length)) {
-                    throw new NotFoundException("FilmDbService: Жанр с ID: " + genre.getId() + " не найден в приложении");
-                }
-                if ((genre.getName() != null) && (GenreValue.isCorrect(genre.getName()))) {
-                    validGenres.add(genre);
-                } else {
-                    Genre validGenre = Genre.of(genre.getId(), GenreValue.values()[genre.getId() - 1].getVal());
-                    validGenres.add(validGenre);
-                }
-            }
+        if (film.getId() == null) {
+            log.warn("FilmService: Запрос на обновление фильма по ID = null");
+            throw new ValidationException("FilmService: Фильм не может быть обновлен по ID = null");
         }
+        checkFilmExists(film.getId());
 
-        MpaRating validMpaRating;
-        if (film.getMpa() == null) {
-            validMpaRating = MpaRating.of(1, MpaRatingValue.values()[0].getVal());
-        } else {
-            if ((film.getMpa().getId() < 1) || (film.getMpa().getId() > MpaRatingValue.values().length)) {
-                throw new NotFoundException("FilmDbService: MPA рейтинг с ID: " + film.getMpa().getId() + " не найден в приложении");
-            }
-            if ((film.getMpa().getName() != null) && (MpaRatingValue.isCorrect(film.getMpa().getName()))) {
-                validMpaRating = film.getMpa();
-            } else {
-                validMpaRating = MpaRating.of(film.getMpa().getId(),
-                        MpaRatingValue.values()[film.getMpa().getId() - 1].getVal());
-            }
-        }
-
-        Film validFilm = Film.of(
-                film.getId(),
-                film.getName(),
-                film.getDescription(),
-                film.getReleaseDate(),
-                film.getDuration(),
-                Collections.unmodifiableSequencedSet(validGenres),
-                validMpaRating
-        );
+        Film validFilm = normalizeFilm(film);
         return filmStorage.updateFilm(validFilm);
     }
 
     public List<Film> getAllFilms() {
-        return List.copyOf(filmStorage.getAllFilms());
+        return Collections.unmodifiableList(filmStorage.getAllFilms());
+    }
+
+    public List<Film> getFilmsPage(Long afterId, Integer limit) {
+        long validAfterId = PageValidation.validAfterId(afterId);
+        int validLimit = PageValidation.validLimit(limit);
+        return Collections.unmodifiableList(filmStorage.getFilmsPage(validAfterId, validLimit));
+    }
+
+    public void streamAllFilms(Consumer<Film> action) {
+        filmStorage.streamAllFilms(action);
+        log.info("FilmService: Выгрузка всех фильмов завершена");
     }
 
     public Film getFilmById(Long id) {
@@ -145,11 +171,14 @@ public class FilmService {
             throw new ValidationException("FilmService: Лайк к фильму не может быть добален по ID пользователя = null");
         }
         // check Db
-        filmStorage.getFilmById(filmId);
-        userStorage.getUserById(userId);
+        checkFilmExists(filmId);
+        checkUserExists(userId);
 
-        filmStorage.addLike(filmId, userId);
-        log.info("Лайк к фильму успешно добавлен");
+        if (filmStorage.addLike(filmId, userId)) {
+            log.info("Лайк к фильму успешно добавлен");
+        } else {
+            log.info("Лайк к фильму был добавлен ранее или будет записан позднее");
+        }
     }
 
     public void removeLike(Long filmId, Long userId) {
@@ -162,14 +191,139 @@ public class FilmService {
             throw new ValidationException("FilmService: Лайк у фильма не может быть удален по ID пользователя = null");
         }
         // check Db
-        filmStorage.getFilmById(filmId);
-        userStorage.getUserById(userId);
+        checkFilmExists(filmId);
+        checkUserExists(userId);
 
         filmStorage.removeLike(filmId, userId);
         log.info("Лайк у фильма успешно удален");
     }
 
     public List<Film> getTopFilms(int limit) {
-        return List.copyOf(filmStorage.getTopFilms(limit));
+        // порядок фильмов определяется рейтингом в памяти, из хранилища фильмы получаются по первичному ключу
+        List<Long> topFilmsIds = leaderboard.getTopFilmsIds(limit);
+        return List.copyOf(filmStorage.getFilmsByIds(topFilmsIds));
+    }
+
+    /**
+     * Возвращает не более limit фильмов, которые лайкнули пользователи с похожими лайками,
+     * а сам пользователь - нет. Фильмы упорядочены по убыванию суммарной похожести лайкнувших их пользователей.
+     */
+    public List<Film> getRecommendations(Long userId, Integer limit) {
+        if (userId == null || userId < 1L) {
+            log.warn("FilmService: Запрос на получение рекомендаций фильмов по некорректному ID пользователя");
+            throw new ValidationException("FilmService: рекомендации фильмов не могут быть получены по некорректному ID: "
+                    + userId);
+        }
+        int validLimit = (limit == null) ? DEFAULT_RECOMMENDATIONS_SIZE : limit;
+        if (validLimit < 1 || validLimit > MAX_RECOMMENDATIONS_SIZE) {
+            log.warn("FilmService: Запрос на получение рекомендаций фильмов с некорректным limit");
+            throw new ValidationException("FilmService: limit должен быть в диапазоне от 1 до " + MAX_RECOMMENDATIONS_SIZE);
+        }
+        // check Db
+        checkUserExists(userId);
+
+        List<FilmRecommender.Recommendation> recommendations = recommender.getRecommendations(userId, validLimit,
+                recommendationsNeighbours);
+        List<Long> filmsIds = new ArrayList<>(recommendations.size());
+        for (FilmRecommender.Recommendation recommendation : recommendations) {
+            filmsIds.add(recommendation.filmId());
+        }
+        log.info("Список рекомендаций фильмов пользователя успешно сформирован");
+        return List.copyOf(filmStorage.getFilmsByIds(filmsIds));
+    }
+
+    /**
+     * Возвращает не более limit фильмов, похожих на фильм, из предварительно рассчитанного индекса.
+     */
+    public List<Film> getSimilarFilms(Long filmId, Integer limit) {
+        if (filmId == null || filmId < 1L) {
+            log.warn("FilmService: Запрос на получение похожих фильмов по некорректному ID фильма");
+            throw new ValidationException("FilmService: похожие фильмы не могут быть получены по некорректному ID: "
+                    + filmId);
+        }
+        int validLimit = (limit == null) ? DEFAULT_SIMILAR_FILMS_SIZE : limit;
+        if (validLimit < 1 || validLimit > MAX_SIMILAR_FILMS_SIZE) {
+            log.warn("FilmService: Запрос на получение похожих фильмов с некорректным limit");
+            throw new ValidationException("FilmService: limit должен быть в диапазоне от 1 до " + MAX_SIMILAR_FILMS_SIZE);
+        }
+        // check Db
+        checkFilmExists(filmId);
+
+        List<Long> filmsIds = similarFilmsIndex.getSimilarFilmsIds(filmId, validLimit);
+        log.info("Список похожих фильмов успешно сформирован");
+        return List.copyOf(filmStorage.getFilmsByIds(filmsIds));
+    }
+
+    private void checkFilmExists(Long filmId) {
+        if (filmStorage.getExistingFilmsIds(List.of(filmId)).isEmpty()) {
+            log.warn("FilmService: Фильм c ID: {} не найден в приложении", filmId);
+            throw new NotFoundException("FilmService: Фильм c ID: " + filmId + " не найден");
+        }
+    }
+
+    private void checkUserExists(Long userId) {
+        if (userStorage.getExistingUsersIds(List.of(userId)).isEmpty()) {
+            log.warn("FilmService: User c ID: {} не найден в приложении", userId);
+            throw new NotFoundException("FilmService: User c ID: " + userId + " не найден в приложении");
+        }
+    }
+
+    private void addFilmsChunk(List<Film> chunk, List<Integer> chunkIndexes, FilmBatchItemResult[] results) {
+        try {
+            List<Long> ids = filmStorage.addFilms(chunk);
+            for (int i = 0; i < ids.size(); i++) {
+                results[chunkIndexes.get(i)] = FilmBatchItemResult.of(chunkIndexes.get(i), ids.get(i), null);
+                leaderboard.addFilm(ids.get(i));
+            }
+        } catch (DataAccessException | InternalServerException e) {
+            log.warn("FilmService: Не удалось сохранить часть пакета фильмов, фильмы сохраняются по одному", e);
+            for (int i = 0; i < chunk.size(); i++) {
+                addFilmsChunkItem(chunk.get(i), chunkIndexes.get(i), results);
+            }
+        }
+    }
+
+    private void addFilmsChunkItem(Film film, int idx, FilmBatchItemResult[] results) {
+        try {
+            Long id = filmStorage.addFilms(List.of(film)).getFirst();
+            results[idx] = FilmBatchItemResult.of(idx, id, null);
+            leaderboard.addFilm(id);
+        } catch (DataAccessException | InternalServerException e) {
+            log.warn("FilmService: Не удалось сохранить фильм с позицией {} в пакете", idx, e);
+            results[idx] = FilmBatchItemResult.of(idx, null, BATCH_ITEM_SAVE_ERROR);
+        }
+    }
+
+    /**
+     * Приводит жанры и MPA рейтинг фильма к объектам справочника GenreMpaDictionary.
+     * Если рейтинг не указан, используется рейтинг с ID: 1.
+     */
+    private Film normalizeFilm(Film film) {
+        SequencedSet<Genre> validGenres = new LinkedHashSet<>();
+        if ((film.getGenres() != null) && !(film.getGenres().isEmpty())) {
+            for (Genre genre : film.getGenres()) {
+                Genre validGenre = dictionary.getGenre(genre.getId());
+                if (validGenre == null) {
+                    throw new NotFoundException("FilmDbService: Жанр с ID: " + genre.getId() + " не найден в приложении");
+                }
+                validGenres.add(validGenre);
+            }
+        }
+
+        Integer mpaRatingId = (film.getMpa() == null) ? DEFAULT_MPA_RATING_ID : film.getMpa().getId();
+        MpaRating validMpaRating = dictionary.getMpaRating(mpaRatingId);
+        if (validMpaRating == null) {
+            throw new NotFoundException("FilmDbService: MPA рейтинг с ID: " + mpaRatingId + " не найден в приложении");
+        }
+
+        return Film.of(
+                film.getId(),
+                film.getName(),
+                film.getDescription(),
+                film.getReleaseDate(),
+                film.getDuration(),
+                Collections.unmodifiableSequencedSet(validGenres),
+                validMpaRating
+        );
     }
 }
@@ -1,30 +1,64 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.validation.PageValidation;
 import ru.yandex.practicum.filmorate.validation.UserValidation;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * UserService — класс, который отвечает за такие операции с пользователями, как добавление в друзья,
- * удаление из друзей, вывод списка общих друзей.
+ * удаление из друзей, вывод списка общих друзей, рекомендации друзей, поиск цепочки друзей между пользователями.
  * Является компонентом фреймворка Spring boot
  */
 @Service
 @Slf4j
 public class UserService {
+    private static final int DEFAULT_SUGGESTIONS_SIZE = 10;
+    private static final int MAX_SUGGESTIONS_SIZE = 100;
+    private static final int MAX_FRIENDS_BATCH_SIZE = 500;
+
     private final UserStorage userStorage;
+    private final FriendGraph friendGraph;
+    private final int suggestionsMaxExpansions;
+    private final Cache<Long, List<User>> suggestionsCache;
+    private final int pathMaxDepth;
+    private final int pathMaxExpansions;
 
+    /**
+     * Граф дружбы в памяти используется, если он включен (filmorate.friend-graph.enabled), иначе - запросы к БД.
+     * Рекомендации друзей кэшируются на короткое время filmorate.friend-suggestions.cache-ttl.
+     */
     @Autowired
-    public UserService(UserStorage userStorage) {
+    public UserService(UserStorage userStorage, ObjectProvider<FriendGraph> friendGraph,
+                       @Value("${filmorate.friend-suggestions.max-expansions:200000}") int suggestionsMaxExpansions,
+                       @Value("${filmorate.friend-suggestions.cache-ttl:30s}") Duration suggestionsCacheTtl,
+                       @Value("${filmorate.friend-suggestions.cache-size:10000}") long suggestionsCacheSize,
+                       @Value("${filmorate.friend-path.max-depth:6}") int pathMaxDepth,
+                       @Value("${filmorate.friend-path.max-expansions:1000000}") int pathMaxExpansions) {
         this.userStorage = userStorage;
+        this.friendGraph = friendGraph.getIfAvailable();
+        this.suggestionsMaxExpansions = suggestionsMaxExpansions;
+        this.suggestionsCache = Caffeine.newBuilder()
+                .maximumSize(suggestionsCacheSize)
+                .expireAfterWrite(suggestionsCacheTtl)
+                .build();
+        this.pathMaxDepth = pathMaxDepth;
+        this.pathMaxExpansions = pathMaxExpansions;
     }
 
     public User addUser(User user) {
@@ -54,8 +88,8 @@ public class UserService {
             log.warn("UserService: Запрос на обновление user с некорректным ID");
             throw new ValidationException("UserService: user не может быть обновлен, ID некорректен " + user.getId());
         }
-        // // Check Db
-        getUserById(user.getId());
+        // Check Db
+        checkUsersExist(user.getId());
 
         // Замена пустого имени на логин
         String validName;
@@ -76,7 +110,18 @@ public class UserService {
     }
 
     public List<User> getAllUsers() {
-        return List.copyOf(userStorage.getAllUsers());
+        return Collections.unmodifiableList(userStorage.getAllUsers());
+    }
+
+    public List<User> getUsersPage(Long afterId, Integer limit) {
+        long validAfterId = PageValidation.validAfterId(afterId);
+        int validLimit = PageValidation.validLimit(limit);
+        return Collections.unmodifiableList(userStorage.getUsersPage(validAfterId, validLimit));
+    }
+
+    public void streamAllUsers(Consumer<User> action) {
+        userStorage.streamAllUsers(action);
+        log.info("UserService: Выгрузка всех пользователей завершена");
     }
 
     public User getUserById(Long id) {
@@ -95,12 +140,11 @@ public class UserService {
             throw new ValidationException("UserService: друг не может быть добален, ID некорректен");
         }
         // check Db
-        User user = userStorage.getUserById(userId);
-        User friend = userStorage.getUserById(friendId);
+        checkUsersExist(userId, friendId);
 
-        Set<Long> userFriendsIds = userStorage.getUserFriendsIdsById(userId);
-        if (!(userFriendsIds.contains(friendId))) {
-            userStorage.addFriend(userId, friendId);
+        // insert-if-absent in storage, no read of the friend list before write
+        if (userStorage.addFriend(userId, friendId)) {
+            suggestionsCache.invalidate(userId);
             log.info("Друг успешно добавлен");
         } else {
             log.info("Друг был добавлен ранее");
@@ -113,12 +157,10 @@ public class UserService {
             throw new ValidationException("UserService: друг не может быть удален ID = null");
         }
         // check Db
-        User user = userStorage.getUserById(userId);
-        User friend = userStorage.getUserById(friendId);
+        checkUsersExist(userId, friendId);
 
-        Set<Long> userFriendsIds = userStorage.getUserFriendsIdsById(userId);
-        if (userFriendsIds.contains(friendId)) {
-            userStorage.removeFriend(userId, friendId);
+        if (userStorage.removeFriend(userId, friendId)) {
+            suggestionsCache.invalidate(userId);
             log.info("Друг успешно удален");
         } else {
             log.info("друг не может быть удален - отсутствует в списке друзей");
@@ -134,34 +176,233 @@ public class UserService {
                     + userId);
         }
         // check Db
-        userStorage.getUserById(userId);
+        checkUsersExist(userId);
 
         List<User> users = userStorage.getAllFriendsById(userId);
         log.info("Список всех друзей пользователя успешно сформирован");
         return List.copyOf(users);
     }
 
+    /**
+     * Возвращает списки друзей для нескольких пользователей в порядке запроса.
+     * ID друзей получаются одним запросом к user_friend (или из графа дружбы), сами друзья - одним запросом
+     * по объединению ID; друг, общий для нескольких пользователей, загружается один раз.
+     * Для пользователей без друзей и несуществующих пользователей возвращается пустой список.
+     */
+    public Map<Long, List<User>> getFriendsByUsersIds(List<Long> usersIds) {
+        if (usersIds == null || usersIds.isEmpty()) {
+            log.warn("UserService: Запрос на получение списков друзей по пустому списку ID");
+            throw new ValidationException("UserService: список ID пользователей не может быть пустым");
+        }
+        if (usersIds.size() > MAX_FRIENDS_BATCH_SIZE) {
+            log.warn("UserService: Запрос на получение списков друзей для {} пользователей", usersIds.size());
+            throw new ValidationException("UserService: списки друзей могут быть получены не более чем для "
+                    + MAX_FRIENDS_BATCH_SIZE + " пользователей за запрос");
+        }
+        Set<Long> requestedIds = new LinkedHashSet<>();
+        for (Long userId : usersIds) {
+            if (userId == null || userId < 1L) {
+                log.warn("UserService: Запрос на получение списков друзей c некорректным ID");
+                throw new ValidationException("UserService: списки друзей не могут быть получены, ID некорректен: "
+                        + userId);
+            }
+            requestedIds.add(userId);
+        }
+
+        // friends ids of every requested user
+        Map<Long, List<Long>> friendsIds = new HashMap<>();
+        if (friendGraph != null) {
+            for (Long userId : requestedIds) {
+                long[] userFriendsIds = friendGraph.getFriendsIds(userId);
+                if (userFriendsIds.length > 0) {
+                    friendsIds.put(userId, Arrays.stream(userFriendsIds).boxed().toList());
+                }
+            }
+        } else {
+            friendsIds = userStorage.getFriendsIdsByUsersIds(requestedIds);
+        }
+
+        // every friend is loaded once
+        Set<Long> allFriendsIds = new HashSet<>();
+        friendsIds.values().forEach(allFriendsIds::addAll);
+        Map<Long, User> friendsById = new HashMap<>();
+        if (!allFriendsIds.isEmpty()) {
+            for (User friend : userStorage.getUsersByIdSet(allFriendsIds)) {
+                friendsById.put(friend.getId(), friend);
+            }
+        }
+
+        Map<Long, List<User>> friends = new LinkedHashMap<>();
+        for (Long userId : requestedIds) {
+            List<User> userFriends = new ArrayList<>();
+            for (Long friendId : friendsIds.getOrDefault(userId, List.of())) {
+                User friend = friendsById.get(friendId);
+                if (friend != null) {
+                    userFriends.add(friend);
+                }
+            }
+            friends.put(userId, List.copyOf(userFriends));
+        }
+        log.info("Списки друзей {} пользователей успешно сформированы", requestedIds.size());
+        return Collections.unmodifiableMap(friends);
+    }
+
     public List<User> getAllCommonFriendsByIds(Long userId, Long anotherUserId) {
+        return getCommonFriendsPage(userId, anotherUserId, null, null);
+    }
+
+    /**
+     * Возвращает общих друзей двух пользователей, упорядоченных по ID.
+     * Если after и limit не заданы, возвращаются все общие друзья, иначе - не более limit друзей с ID больше after.
+     * Существование пользователей проверяется только при пустом результате:
+     * общие друзья есть лишь у существующих пользователей.
+     */
+    public List<User> getCommonFriendsPage(Long userId, Long anotherUserId, Long afterId, Integer limit) {
         if (userId == null || userId < 1L || anotherUserId == null || anotherUserId < 1L) {
             log.warn("UserService: Запрос на получение списка общих друзей c некорректным ID");
             throw new ValidationException("UserService: список общих друзей не может быть получен, ID некорректен");
         }
-        // check Db
-        userStorage.getUserById(userId);
-        userStorage.getUserById(anotherUserId);
+        long validAfterId = PageValidation.validAfterId(afterId);
+        int validLimit = (afterId == null && limit == null) ? Integer.MAX_VALUE : PageValidation.validLimit(limit);
 
-        Set<Long> userFriendsIds = userStorage.getUserFriendsIdsById(userId);
-        Set<Long> anotherUserFriendsIds = userStorage.getUserFriendsIdsById(anotherUserId);
-        if (userFriendsIds == null || anotherUserFriendsIds == null) {
-            log.warn("UserService: Не удалось получить объекты User по ID - не найдены в приложении");
-            throw new NotFoundException("UserService: объекты User не найдены в приложении");
+        List<User> commonFriends;
+        if (friendGraph != null) {
+            long[] commonFriendsIds = friendGraph.getCommonFriendsIds(userId, anotherUserId, validAfterId, validLimit);
+            if (commonFriendsIds.length == 0) {
+                commonFriends = List.of();
+            } else {
+                Set<Long> ids = new HashSet<>(commonFriendsIds.length * 2);
+                for (long commonFriendId : commonFriendsIds) {
+                    ids.add(commonFriendId);
+                }
+                commonFriends = userStorage.getUsersByIdSet(ids);
+            }
+        } else {
+            commonFriends = userStorage.getCommonFriends(userId, anotherUserId, validAfterId, validLimit);
         }
 
-        Set<Long> resultOfIntersection = userFriendsIds.stream()
-                .filter(anotherUserFriendsIds::contains)
-                .collect(Collectors.toSet());
-        List<User> commonFriends = userStorage.getUsersByIdSet(resultOfIntersection);
-        log.info("Список всех общих друзей пользователей успешно сформирован");
+        if (commonFriends.isEmpty()) {
+            // check Db
+            checkUsersExist(userId, anotherUserId);
+        }
+        log.info("Список общих друзей пользователей успешно сформирован");
         return List.copyOf(commonFriends);
     }
+
+    /**
+     * Возвращает не более limit рекомендуемых друзей пользователя - друзей его друзей, упорядоченных
+     * по убыванию количества общих друзей. Текущие друзья пользователя исключаются.
+     * В кэше хранится список из MAX_SUGGESTIONS_SIZE рекомендаций, запросы с разным limit используют его начало.
+     */
+    public List<User> getFriendSuggestions(Long userId, Integer limit) {
+        if (userId == null || userId < 1L) {
+            log.warn("UserService: Запрос на получение рекомендаций друзей по некорректному ID");
+            throw new ValidationException("UserService: рекомендации друзей не могут быть получены по некорректному ID: "
+                    + userId);
+        }
+        int validLimit = (limit == null) ? DEFAULT_SUGGESTIONS_SIZE : limit;
+        if (validLimit < 1 || validLimit > MAX_SUGGESTIONS_SIZE) {
+            log.warn("UserService: Запрос на получение рекомендаций друзей с некорректным limit");
+            throw new ValidationException("UserService: limit должен быть в диапазоне от 1 до " + MAX_SUGGESTIONS_SIZE);
+        }
+        // check Db
+        checkUsersExist(userId);
+
+        List<User> suggestions = suggestionsCache.get(userId, this::findFriendSuggestions);
+        log.info("Список рекомендаций друзей пользователя успешно сформирован");
+        return suggestions.subList(0, Math.min(validLimit, suggestions.size()));
+    }
+
+    private List<User> findFriendSuggestions(Long userId) {
+        if (friendGraph == null) {
+            return List.copyOf(userStorage.getFriendSuggestions(userId, MAX_SUGGESTIONS_SIZE));
+        }
+
+        List<FriendGraph.Suggestion> suggestions = friendGraph.getFriendSuggestions(userId, MAX_SUGGESTIONS_SIZE,
+                suggestionsMaxExpansions);
+        if (suggestions.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> ids = new HashSet<>(suggestions.size() * 2);
+        for (FriendGraph.Suggestion suggestion : suggestions) {
+            ids.add(suggestion.userId());
+        }
+        Map<Long, User> usersById = new HashMap<>();
+        for (User user : userStorage.getUsersByIdSet(ids)) {
+            usersById.put(user.getId(), user);
+        }
+
+        // restore ranking order
+        List<User> users = new ArrayList<>(suggestions.size());
+        for (FriendGraph.Suggestion suggestion : suggestions) {
+            User user = usersById.get(suggestion.userId());
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return List.copyOf(users);
+    }
+
+    /**
+     * Возвращает кратчайшую цепочку друзей от пользователя userId до otherId, включая обоих пользователей.
+     * Длина цепочки ограничена filmorate.friend-path.max-depth, объем обхода - filmorate.friend-path.max-expansions.
+     * Поиск выполняется только по графу дружбы в памяти. NotFoundException означает, что цепочки нет,
+     * SearchLimitExceededException - что объем обхода исчерпан раньше, чем цепочка найдена
+     * или ее отсутствие установлено.
+     */
+    public List<User> getFriendPath(Long userId, Long otherId) {
+        if (userId == null || userId < 1L || otherId == null || otherId < 1L) {
+            log.warn("UserService: Запрос на поиск цепочки друзей c некорректным ID");
+            throw new ValidationException("UserService: цепочка друзей не может быть найдена, ID некорректен");
+        }
+        if (friendGraph == null) {
+            log.warn("UserService: Запрос на поиск цепочки друзей при отключенном графе дружбы");
+            throw new InternalServerException("UserService: поиск цепочки друзей недоступен, граф дружбы отключен");
+        }
+        // check Db
+        checkUsersExist(userId, otherId);
+
+        long[] pathIds = friendGraph.findPath(userId, otherId, pathMaxDepth, pathMaxExpansions);
+        if (pathIds.length == 0) {
+            log.info("UserService: Цепочка друзей от {} до {} не найдена", userId, otherId);
+            throw new NotFoundException("UserService: Цепочка друзей от пользователя c ID: " + userId
+                    + " до пользователя c ID: " + otherId + " длиной не более " + pathMaxDepth + " не найдена");
+        }
+
+        Set<Long> ids = new HashSet<>(pathIds.length * 2);
+        for (long pathId : pathIds) {
+            ids.add(pathId);
+        }
+        Map<Long, User> usersById = new HashMap<>();
+        for (User user : userStorage.getUsersByIdSet(ids)) {
+            usersById.put(user.getId(), user);
+        }
+        List<User> path = new ArrayList<>(pathIds.length);
+        for (long pathId : pathIds) {
+            User user = usersById.get(pathId);
+            if (user == null) {
+                // пользователь удален после обновления графа дружбы, цепочка через него недействительна
+                log.warn("UserService: User c ID: {} из цепочки друзей не найден в приложении", pathId);
+                throw new NotFoundException("UserService: Цепочка друзей от пользователя c ID: " + userId
+                        + " до пользователя c ID: " + otherId + " не найдена, User c ID: " + pathId
+                        + " не найден в приложении");
+            }
+            path.add(user);
+        }
+        log.info("Цепочка друзей между пользователями успешно найдена");
+        return List.copyOf(path);
+    }
+
+    /**
+     * Проверяет существование пользователей с переданными ID одним запросом к хранилищу.
+     */
+    private void checkUsersExist(Long... usersIds) {
+        Set<Long> existingIds = userStorage.getExistingUsersIds(Arrays.asList(usersIds));
+        for (Long userId : usersIds) {
+            if (!existingIds.contains(userId)) {
+                log.warn("UserService: User c ID: {} не найден в приложении", userId);
+                throw new NotFoundException("UserService: User c ID: " + userId + " не найден в приложении");
+            }
+        }
+    }
 }
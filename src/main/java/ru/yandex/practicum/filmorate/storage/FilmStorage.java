@@ -1,8 +1,13 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс, определяющий набор действий хранения и получения с объектом типа Film в приложении.
@@ -10,15 +15,31 @@ import java.util.List;
 public interface FilmStorage {
     Film addFilm(Film film);
 
+    List<Long> addFilms(List<Film> films);
+
     Film updateFilm(Film film);
 
     List<Film> getAllFilms();
 
+    List<Film> getFilmsPage(long afterId, int limit);
+
+    void streamAllFilms(Consumer<Film> action);
+
     Film getFilmById(Long filmId);
 
-    void addLike(Long filmId, Long userId);
+    Set<Long> getExistingFilmsIds(Collection<Long> filmsIds);
+
+    boolean addLike(Long filmId, Long userId);
 
-    void removeLike(Long filmId, Long userId);
+    boolean removeLike(Long filmId, Long userId);
+
+    void applyLikes(List<FilmLike> addedLikes, List<FilmLike> removedLikes);
 
     List<Film> getTopFilms(int limit);
+
+    List<Film> getFilmsByIds(List<Long> filmsIds);
+
+    Map<Long, Long> getFilmsLikesCounts();
+
+    void streamAllLikes(Consumer<FilmLike> action);
 }
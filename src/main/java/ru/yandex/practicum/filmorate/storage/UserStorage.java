@@ -1,9 +1,13 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс, определяющий набор действий хранения и получения с объектом типа User в приложении.
@@ -15,15 +19,29 @@ public interface UserStorage {
 
     List<User> getAllUsers();
 
+    List<User> getUsersPage(long afterId, int limit);
+
+    void streamAllUsers(Consumer<User> action);
+
     User getUserById(Long userId);
 
-    void addFriend(Long userId, Long friendId);
+    Set<Long> getExistingUsersIds(Collection<Long> usersIds);
 
-    void removeFriend(Long userId, Long friendId);
+    boolean addFriend(Long userId, Long friendId);
+
+    boolean removeFriend(Long userId, Long friendId);
 
     List<User> getAllFriendsById(Long userId);
 
     List<User> getUsersByIdSet(Set<Long> ids);
 
     Set<Long> getUserFriendsIdsById(Long userId);
+
+    Map<Long, List<Long>> getFriendsIdsByUsersIds(Collection<Long> usersIds);
+
+    List<User> getCommonFriends(long userId, long otherId, long afterId, int limit);
+
+    List<User> getFriendSuggestions(long userId, int limit);
+
+    void streamAllFriendships(Consumer<Friendship> action);
 }
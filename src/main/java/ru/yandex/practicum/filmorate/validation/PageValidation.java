@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.validation;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+/**
+ * Вспомогательный класс со статическими методами проверки параметров постраничного (keyset) запроса:
+ * ID последнего полученного объекта after и размера страницы limit.
+ */
+@Slf4j
+public final class PageValidation {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private PageValidation() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static long validAfterId(Long afterId) {
+        if (afterId == null) {
+            return 0L;
+        }
+        if (afterId < 0L) {
+            log.warn("Процесс валидации параметров страницы не пройден - after некорректен");
+            throw new ValidationException("Параметр after не может быть отрицательным");
+        }
+        return afterId;
+    }
+
+    public static int validLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            log.warn("Процесс валидации параметров страницы не пройден - limit некорректен");
+            throw new ValidationException("Параметр limit должен быть в диапазоне от 1 до " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+}
@@ -16,3 +16,9 @@ SELECT 4, 'Триллер' UNION
 SELECT 5, 'Документальный' UNION
 SELECT 6, 'Боевик'
 ) WHERE NOT EXISTS (SELECT * FROM genres);
+
+
+-- backfill/восстановление денормализованного счетчика лайков
+UPDATE films AS f
+SET like_count = (SELECT COUNT(*) FROM film_like AS fl WHERE fl.film_id = f.id)
+WHERE like_count <> (SELECT COUNT(*) FROM film_like AS fl WHERE fl.film_id = f.id);
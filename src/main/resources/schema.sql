@@ -15,9 +15,15 @@ CREATE TABLE IF NOT EXISTS films (
   release_date DATE,
   duration INT,
   mpa_rating_id INT,
+  like_count INT NOT NULL DEFAULT 0,
   FOREIGN KEY (mpa_rating_id) REFERENCES mpa_rating(mpa_rating_id)
 );
 
+-- для БД, созданных до появления счетчика лайков
+ALTER TABLE films ADD COLUMN IF NOT EXISTS like_count INT NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS films_like_count_idx ON films (like_count DESC, id);
+
 CREATE TABLE IF NOT EXISTS film_genre (
   film_id BIGINT,
   genre_id INT,
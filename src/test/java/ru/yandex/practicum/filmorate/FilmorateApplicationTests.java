@@ -1,46 +1,104 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.cache.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.cache.CachingUserStorage;
 import ru.yandex.practicum.filmorate.dal.FilmDbStorage;
 import ru.yandex.practicum.filmorate.dal.GenreDbStorage;
+import ru.yandex.practicum.filmorate.dal.GenreMpaDictionary;
 import ru.yandex.practicum.filmorate.dal.MpaRatingDbStorage;
 import ru.yandex.practicum.filmorate.dal.UserDbStorage;
+import ru.yandex.practicum.filmorate.dal.WriteBehindLikesFilmStorage;
 import ru.yandex.practicum.filmorate.dal.mappers.FilmRowMapper;
 import ru.yandex.practicum.filmorate.dal.mappers.GenreRowMapper;
 import ru.yandex.practicum.filmorate.dal.mappers.MpaRatingRowMapper;
 import ru.yandex.practicum.filmorate.dal.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.event.DictionaryReloadedEvent;
+import ru.yandex.practicum.filmorate.event.FilmLikesChangedEvent;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.SearchLimitExceededException;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+import ru.yandex.practicum.filmorate.index.FilmLikesLeaderboard;
+import ru.yandex.practicum.filmorate.index.FilmRecommender;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
+import ru.yandex.practicum.filmorate.index.SimilarFilmsIndex;
+import ru.yandex.practicum.filmorate.jfr.JfrOperationAspect;
+import ru.yandex.practicum.filmorate.jfr.OperationEvent;
+import ru.yandex.practicum.filmorate.metrics.OperationMetricsAspect;
+import ru.yandex.practicum.filmorate.metrics.SqlProfiler;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmBatchItemResult;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.MpaRatingService;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.*;
 
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @Import({UserDbStorage.class, UserRowMapper.class, GenreDbStorage.class, GenreRowMapper.class,
         MpaRatingDbStorage.class, MpaRatingRowMapper.class, FilmDbStorage.class, FilmRowMapper.class,
-        MpaRatingService.class})
+        MpaRatingService.class, GenreMpaDictionary.class, FriendGraph.class, FilmRecommender.class,
+        SimilarFilmsIndex.class})
 class FilmorateApplicationTests {
     private final UserDbStorage userDbStorage;
     private final FilmDbStorage filmDbStorage;
     private final GenreDbStorage genreDbStorage;
     private final MpaRatingDbStorage mpaRatingDbStorage;
+    private final GenreMpaDictionary dictionary;
+    private final FriendGraph friendGraph;
+    private final FilmRecommender filmRecommender;
+    private final SimilarFilmsIndex similarFilmsIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
     @BeforeEach
     void updateDb() {
@@ -276,4 +334,913 @@ class FilmorateApplicationTests {
         assertEquals(2, topFilms.get(1).getId());
         assertEquals(1, topFilms.get(2).getId());
     }
+
+    @Test
+    @DirtiesContext
+    public void testGetTopFilmsAfterRemoveLike() {
+        Film newFilm = Film.of(
+                0L,
+                "Film name 2",
+                "asdfasdfsad sadfasdfsadf asdadadas",
+                LocalDate.of(2012, 2, 5),
+                90,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>()),
+                MpaRating.of(2, "PG")
+        );
+        filmDbStorage.addFilm(newFilm);
+
+        User newUser = User.of(
+                0L,
+                "User name 2",
+                "Email64543@mail.com",
+                "5645654qwerty123",
+                LocalDate.of(1984, 2, 4)
+        );
+        userDbStorage.addUser(newUser);
+
+        filmDbStorage.addLike(1L, 1L);
+        filmDbStorage.addLike(1L, 2L);
+        filmDbStorage.addLike(2L, 1L);
+        List<Film> topFilms = filmDbStorage.getTopFilms(10);
+        assertEquals(1, topFilms.get(0).getId());
+        assertEquals(2, topFilms.get(1).getId());
+
+        filmDbStorage.removeLike(1L, 1L);
+        filmDbStorage.removeLike(1L, 2L);
+        // повторное удаление не должно уменьшать счетчик лайков
+        filmDbStorage.removeLike(1L, 2L);
+        topFilms = filmDbStorage.getTopFilms(10);
+        assertEquals(2, topFilms.size());
+        assertEquals(2, topFilms.get(0).getId());
+        assertEquals(1, topFilms.get(1).getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFilmLikesLeaderboard() {
+        for (int i = 2; i <= 3; i++) {
+            userDbStorage.addUser(User.of(0L, "User " + i, "user" + i + "@mail.com", "user" + i,
+                    LocalDate.of(1990, 1, 1)));
+            filmDbStorage.addFilm(Film.of(0L, "Film " + i, "Description " + i, LocalDate.of(2001, 1, 1), 100,
+                    Collections.unmodifiableSequencedSet(new LinkedHashSet<>()), MpaRating.of(1, "G")));
+        }
+        filmDbStorage.addLike(2L, 1L);
+        filmDbStorage.addLike(2L, 2L);
+        filmDbStorage.addLike(3L, 1L);
+        FilmLikesLeaderboard leaderboard = new FilmLikesLeaderboard(filmDbStorage);
+        leaderboard.load();
+
+        // ordered by likes, film 1 without likes is present
+        assertEquals(List.of(2L, 3L, 1L), leaderboard.getTopFilmsIds(10));
+        assertEquals(List.of(2L), leaderboard.getTopFilmsIds(1));
+        assertTrue(leaderboard.checkConsistency().isEmpty());
+
+        // films 2 and 3 have two likes each, the lower id goes first
+        leaderboard.onFilmLikesChanged(FilmLikesChangedEvent.added(FilmLike.of(3L, 2L)));
+        assertEquals(List.of(2L, 3L, 1L), leaderboard.getTopFilmsIds(10));
+
+        leaderboard.onFilmLikesChanged(FilmLikesChangedEvent.removed(FilmLike.of(2L, 1L)));
+        assertEquals(List.of(3L, 2L, 1L), leaderboard.getTopFilmsIds(10));
+        leaderboard.onFilmLikesChanged(FilmLikesChangedEvent.added(FilmLike.of(1L, 3L)));
+        assertEquals(List.of(3L, 1L, 2L), leaderboard.getTopFilmsIds(10));
+
+        // events were not written to the DB: mismatches are repaired on the second check in a row
+        assertEquals(Map.of(1L, 0L, 2L, 2L, 3L, 1L), leaderboard.checkConsistency());
+        leaderboard.verifyConsistency();
+        assertEquals(List.of(3L, 1L, 2L), leaderboard.getTopFilmsIds(10));
+        leaderboard.verifyConsistency();
+        assertEquals(List.of(2L, 3L, 1L), leaderboard.getTopFilmsIds(10));
+        assertTrue(leaderboard.checkConsistency().isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetFilmsPage() {
+        Film newFilm = Film.of(
+                0L,
+                "Film name 2",
+                "asdfasdfsad sadfasdfsadf asdadadas",
+                LocalDate.of(2012, 2, 5),
+                90,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(Genre.of(1, "Комедия")))),
+                MpaRating.of(2, "PG")
+        );
+        filmDbStorage.addFilm(newFilm);
+        filmDbStorage.addFilm(newFilm);
+
+        List<Film> page = filmDbStorage.getFilmsPage(1L, 1);
+        assertEquals(1, page.size());
+        assertEquals(2, page.get(0).getId());
+        assertEquals(1, page.get(0).getGenres().size());
+
+        page = filmDbStorage.getFilmsPage(2L, 10);
+        assertEquals(1, page.size());
+        assertEquals(3, page.get(0).getId());
+        assertTrue(filmDbStorage.getFilmsPage(3L, 10).isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testStreamAllFilmsAndUsersAsNdjson() throws IOException {
+        filmDbStorage.addFilm(Film.of(0L, "Film name 2", "Description 2", LocalDate.of(2012, 2, 5), 90,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(Genre.of(1, "Комедия"),
+                        Genre.of(2, "Драма")))), MpaRating.of(2, "PG")));
+        filmDbStorage.addFilm(Film.of(0L, "Film name 3", "Description 3", LocalDate.of(2013, 3, 6), 80,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(Genre.of(6, "Боевик")))),
+                MpaRating.of(3, "PG-13")));
+        userDbStorage.addUser(User.of(0L, "User name 2", "user2@mail.com", "user2", LocalDate.of(1991, 1, 1)));
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        // one JSON object per line, films in id order, film 1 without genres
+        String[] filmsLines = toNdjson(filmDbStorage::streamAllFilms, objectMapper).split("\n");
+        assertEquals(3, filmsLines.length);
+        List<JsonNode> films = new ArrayList<>();
+        for (String line : filmsLines) {
+            films.add(objectMapper.readTree(line));
+        }
+        assertEquals(List.of(1L, 2L, 3L), films.stream().map(film -> film.get("id").asLong()).toList());
+        assertEquals(0, films.get(0).get("genres").size());
+        assertEquals("G", films.get(0).get("mpa").get("name").asText());
+        assertEquals(2, films.get(1).get("genres").size());
+        assertEquals("Комедия", films.get(1).get("genres").get(0).get("name").asText());
+        assertEquals(2, films.get(1).get("genres").get(1).get("id").asInt());
+        assertEquals("Боевик", films.get(2).get("genres").get(0).get("name").asText());
+        assertEquals("2013-03-06", films.get(2).get("releaseDate").asText());
+
+        String[] usersLines = toNdjson(userDbStorage::streamAllUsers, objectMapper).split("\n");
+        assertEquals(2, usersLines.length);
+        assertEquals("qwerty", objectMapper.readTree(usersLines[0]).get("login").asText());
+        assertEquals(2L, objectMapper.readTree(usersLines[1]).get("id").asLong());
+    }
+
+    private static <T> String toNdjson(Consumer<Consumer<T>> stream, ObjectMapper objectMapper) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        stream.accept(value -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(value));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testApplyLikes() {
+        Film newFilm = Film.of(
+                0L,
+                "Film name 2",
+                "asdfasdfsad sadfasdfsadf asdadadas",
+                LocalDate.of(2012, 2, 5),
+                90,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>()),
+                MpaRating.of(2, "PG")
+        );
+        filmDbStorage.addFilm(newFilm);
+
+        User newUser = User.of(
+                0L,
+                "User name 2",
+                "Email64543@mail.com",
+                "5645654qwerty123",
+                LocalDate.of(1984, 2, 4)
+        );
+        userDbStorage.addUser(newUser);
+
+        filmDbStorage.addLike(1L, 1L);
+        // повторный лайк к фильму 1 пропускается, лайк к фильму 1 от пользователя 1 удаляется
+        filmDbStorage.applyLikes(
+                List.of(FilmLike.of(2L, 1L), FilmLike.of(2L, 2L), FilmLike.of(1L, 2L), FilmLike.of(1L, 2L)),
+                List.of(FilmLike.of(1L, 1L))
+        );
+
+        assertEquals(2L, filmDbStorage.getFilmsLikesCounts().get(2L));
+        assertEquals(1L, filmDbStorage.getFilmsLikesCounts().get(1L));
+        List<Film> topFilms = filmDbStorage.getTopFilms(10);
+        assertEquals(2, topFilms.get(0).getId());
+        assertEquals(1, topFilms.get(1).getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testWriteBehindLikesFlushOnBatchSizeAndMaxDelay() {
+        FilmStorage delegate = mock(FilmStorage.class);
+        WriteBehindLikesFilmStorage batchStorage = new WriteBehindLikesFilmStorage(delegate, 2, 100,
+                Duration.ofHours(1), 3, false);
+        batchStorage.addLike(1L, 1L);
+        verify(delegate, after(200).never()).applyLikes(anyList(), anyList());
+        assertEquals(1, batchStorage.getPendingLikesCount());
+        // second operation reaches batch size
+        batchStorage.addLike(2L, 1L);
+        verify(delegate, timeout(2000)).applyLikes(List.of(FilmLike.of(1L, 1L), FilmLike.of(2L, 1L)), List.of());
+        assertEquals(0, batchStorage.getPendingLikesCount());
+        batchStorage.close();
+
+        FilmStorage delayDelegate = mock(FilmStorage.class);
+        WriteBehindLikesFilmStorage delayStorage = new WriteBehindLikesFilmStorage(delayDelegate, 100, 1000,
+                Duration.ofMillis(100), 3, false);
+        delayStorage.removeLike(1L, 1L);
+        assertEquals(1, delayStorage.getPendingLikesCount());
+        verify(delayDelegate, timeout(2000)).applyLikes(List.of(), List.of(FilmLike.of(1L, 1L)));
+        assertEquals(0, delayStorage.getPendingLikesCount());
+        delayStorage.close();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testWriteBehindLikesLastOperationWinsAndFlushOnClose() {
+        FilmStorage delegate = mock(FilmStorage.class);
+        WriteBehindLikesFilmStorage storage = new WriteBehindLikesFilmStorage(delegate, 100, 1000,
+                Duration.ofHours(1), 3, false);
+        // like -> unlike of film 1 and unlike -> like of film 2
+        storage.addLike(1L, 1L);
+        storage.removeLike(1L, 1L);
+        storage.removeLike(2L, 1L);
+        storage.addLike(2L, 1L);
+        assertEquals(2, storage.getPendingLikesCount());
+        storage.flush();
+        verify(delegate).applyLikes(List.of(FilmLike.of(2L, 1L)), List.of(FilmLike.of(1L, 1L)));
+
+        storage.addLike(3L, 1L);
+        storage.close();
+        verify(delegate).applyLikes(List.of(FilmLike.of(3L, 1L)), List.of());
+        assertEquals(0, storage.getPendingLikesCount());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testWriteBehindLikesDropsFailingOperationAfterRetries() {
+        FilmStorage delegate = mock(FilmStorage.class);
+        FilmLike missingFilmLike = FilmLike.of(100L, 1L);
+        doAnswer(invocation -> {
+            List<FilmLike> addedLikes = invocation.getArgument(0);
+            if (addedLikes.contains(missingFilmLike)) {
+                throw new DataIntegrityViolationException("film_like: film 100 not found");
+            }
+            return null;
+        }).when(delegate).applyLikes(anyList(), anyList());
+        WriteBehindLikesFilmStorage storage = new WriteBehindLikesFilmStorage(delegate, 100, 1000,
+                Duration.ofHours(1), 2, false);
+        storage.addLike(100L, 1L);
+        storage.addLike(1L, 1L);
+
+        // first failure returns the batch to the buffer
+        assertThrows(DataIntegrityViolationException.class, storage::flush);
+        assertEquals(2, storage.getPendingLikesCount());
+        // second failure applies operations one by one and drops the failing one
+        storage.flush();
+        assertEquals(0, storage.getPendingLikesCount());
+        verify(delegate, times(2)).applyLikes(List.of(missingFilmLike, FilmLike.of(1L, 1L)), List.of());
+        verify(delegate).applyLikes(List.of(missingFilmLike), List.of());
+        verify(delegate).applyLikes(List.of(FilmLike.of(1L, 1L)), List.of());
+
+        // buffer is not blocked by the dropped operation
+        storage.addLike(2L, 1L);
+        storage.flush();
+        verify(delegate).applyLikes(List.of(FilmLike.of(2L, 1L)), List.of());
+        storage.close();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testWriteBehindLikesRejectsOperationWhenBufferIsFull() {
+        FilmStorage delegate = mock(FilmStorage.class);
+        doThrow(new DataAccessResourceFailureException("database is down"))
+                .when(delegate).applyLikes(anyList(), anyList());
+        WriteBehindLikesFilmStorage storage = new WriteBehindLikesFilmStorage(delegate, 2, 3,
+                Duration.ofHours(1), 10, false);
+        storage.addLike(1L, 1L);
+        storage.addLike(2L, 1L);
+        // scheduled flush of the full batch fails and returns it to the buffer
+        verify(delegate, timeout(2000)).applyLikes(List.of(FilmLike.of(1L, 1L), FilmLike.of(2L, 1L)), List.of());
+        storage.addLike(3L, 1L);
+
+        // buffer is full: the caller's flush fails and the operation is not queued
+        assertThrows(ServiceUnavailableException.class, () -> storage.addLike(4L, 1L));
+        assertEquals(3, storage.getPendingLikesCount());
+        // replacing a queued operation takes no space
+        storage.removeLike(1L, 1L);
+        assertEquals(3, storage.getPendingLikesCount());
+
+        // after recovery the caller's flush frees the buffer and the operation is queued
+        doNothing().when(delegate).applyLikes(anyList(), anyList());
+        storage.addLike(4L, 1L);
+        verify(delegate).applyLikes(List.of(FilmLike.of(2L, 1L), FilmLike.of(3L, 1L)), List.of(FilmLike.of(1L, 1L)));
+        assertEquals(1, storage.getPendingLikesCount());
+        storage.close();
+        verify(delegate).applyLikes(List.of(FilmLike.of(4L, 1L)), List.of());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetExistingIds() {
+        assertEquals(Set.of(1L), userDbStorage.getExistingUsersIds(List.of(1L, 2L)));
+        assertEquals(Set.of(1L), filmDbStorage.getExistingFilmsIds(List.of(1L, 100L)));
+        assertTrue(filmDbStorage.getExistingFilmsIds(List.of(100L)).isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testAddFilms() {
+        Film filmWithGenres = Film.of(
+                0L,
+                "Film name 2",
+                "asdfasdfsad sadfasdfsadf asdadadas",
+                LocalDate.of(2012, 2, 5),
+                90,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(
+                        Genre.of(1, "Комедия"), Genre.of(2, "Драма")))),
+                MpaRating.of(2, "PG")
+        );
+        Film filmWithoutGenres = Film.of(
+                0L,
+                "Film name 3",
+                "asdfasdfsad sadfasdfsadf asdadadas",
+                LocalDate.of(2000, 1, 22),
+                80,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>()),
+                MpaRating.of(3, "PG-13")
+        );
+
+        List<Long> ids = filmDbStorage.addFilms(List.of(filmWithGenres, filmWithoutGenres));
+        assertEquals(List.of(2L, 3L), ids);
+        assertEquals(2, filmDbStorage.getFilmById(2L).getGenres().size());
+        assertTrue(filmDbStorage.getFilmById(3L).getGenres().isEmpty());
+        assertEquals(3, filmDbStorage.getFilmById(3L).getMpa().getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testAddFilmsReportsOnlyFailedFilmOfChunk() {
+        FilmStorage filmStorage = mock(FilmStorage.class);
+        AtomicLong nextId = new AtomicLong(1L);
+        when(filmStorage.addFilms(anyList())).thenAnswer(invocation -> {
+            List<Film> films = invocation.getArgument(0);
+            if (films.stream().anyMatch(film -> film.getName().equals("Broken film"))) {
+                throw new DataIntegrityViolationException("Value too long for column \"NAME CHARACTER VARYING(100)\"");
+            }
+            return films.stream().map(film -> nextId.incrementAndGet()).toList();
+        });
+        FilmLikesLeaderboard leaderboard = mock(FilmLikesLeaderboard.class);
+        FilmService filmService = new FilmService(filmStorage, userDbStorage, leaderboard, dictionary,
+                filmRecommender, similarFilmsIndex, 50);
+        List<Film> films = new ArrayList<>();
+        for (String name : List.of("Film 2", "Invalid film", "Broken film", "Film 3")) {
+            films.add(Film.of(0L, name, "Description", LocalDate.of(2001, 1, 1),
+                    name.equals("Invalid film") ? 0 : 100,
+                    Collections.unmodifiableSequencedSet(new LinkedHashSet<>()), MpaRating.of(1, "G")));
+        }
+
+        List<FilmBatchItemResult> results = filmService.addFilms(films);
+
+        // the chunk fails as a whole, then its films are saved one by one
+        verify(filmStorage, times(4)).addFilms(anyList());
+        assertEquals(4, results.size());
+        assertNotNull(results.get(0).getId());
+        assertNull(results.get(0).getError());
+        assertNull(results.get(1).getId());
+        assertEquals("Продолжительность фильма должна быть положительным числом", results.get(1).getError());
+        // database error details are logged, not returned
+        assertNull(results.get(2).getId());
+        assertEquals("Не удалось сохранить фильм", results.get(2).getError());
+        assertNotNull(results.get(3).getId());
+        assertNull(results.get(3).getError());
+        verify(leaderboard).addFilm(results.get(0).getId());
+        verify(leaderboard).addFilm(results.get(3).getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testUpdateFilmGenres() {
+        Film film = Film.of(
+                1L,
+                "Film name",
+                "asdfasdfsad sadfasdfsadf",
+                LocalDate.of(2001, 4, 5),
+                100,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(
+                        Genre.of(1, "Комедия"), Genre.of(2, "Драма")))),
+                MpaRating.of(1, "G")
+        );
+        filmDbStorage.updateFilm(film);
+        assertEquals(2, filmDbStorage.getFilmById(1L).getGenres().size());
+
+        film = Film.of(
+                1L,
+                "Film name",
+                "asdfasdfsad sadfasdfsadf",
+                LocalDate.of(2001, 4, 5),
+                100,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(
+                        Genre.of(2, "Драма"), Genre.of(3, "Мультфильм")))),
+                MpaRating.of(1, "G")
+        );
+        filmDbStorage.updateFilm(film);
+        List<Integer> genresIds = filmDbStorage.getFilmById(1L).getGenres().stream()
+                .map(Genre::getId)
+                .sorted()
+                .toList();
+        assertEquals(List.of(2, 3), genresIds);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testDictionaryResolvesFilmGenresAndMpa() {
+        Film film = Film.of(
+                1L,
+                "Film name",
+                "asdfasdfsad sadfasdfsadf",
+                LocalDate.of(2001, 4, 5),
+                100,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(Genre.of(6, null)))),
+                MpaRating.of(3, null)
+        );
+        filmDbStorage.updateFilm(film);
+
+        Film storedFilm = filmDbStorage.getFilmById(1L);
+        assertSame(dictionary.getMpaRating(3), storedFilm.getMpa());
+        assertEquals("PG-13", storedFilm.getMpa().getName());
+        assertSame(dictionary.getGenre(6), storedFilm.getGenres().getFirst());
+        assertEquals("Боевик", storedFilm.getGenres().getFirst().getName());
+        assertNull(dictionary.getGenre(7));
+        assertNull(dictionary.getMpaRating(0));
+
+        // cached films keep old dictionary objects until the reload event clears the cache
+        CachingFilmStorage cachingFilmStorage = new CachingFilmStorage(filmDbStorage, 100, Duration.ofMinutes(1));
+        cachingFilmStorage.getFilmById(1L);
+        jdbcTemplate.update("UPDATE genres SET name = ? WHERE genre_id = ?", "Экшн", 6);
+        dictionary.reload();
+        assertEquals("Боевик", cachingFilmStorage.getFilmById(1L).getGenres().getFirst().getName());
+        cachingFilmStorage.onDictionaryReloaded(DictionaryReloadedEvent.of(6, 5));
+        assertEquals("Экшн", cachingFilmStorage.getFilmById(1L).getGenres().getFirst().getName());
+        assertSame(dictionary.getGenre(6), cachingFilmStorage.getFilmById(1L).getGenres().getFirst());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFriendGraph() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User user = User.of(
+                    0L,
+                    "Friend " + i,
+                    "friend" + i + "@mail.com",
+                    "friend" + i,
+                    LocalDate.of(1990, 1, 1)
+            );
+            ids.add(userDbStorage.addUser(user).getId());
+        }
+        userDbStorage.addFriend(1L, ids.get(2));
+        userDbStorage.addFriend(1L, ids.get(0));
+        userDbStorage.addFriend(ids.get(1), ids.get(0));
+        userDbStorage.addFriend(ids.get(1), ids.get(2));
+        friendGraph.load();
+
+        assertArrayEquals(new long[]{ids.get(0), ids.get(2)}, friendGraph.getFriendsIds(1L));
+        assertTrue(friendGraph.isFriend(1L, ids.get(0)));
+        assertFalse(friendGraph.isFriend(ids.get(0), 1L));
+        assertEquals(4, friendGraph.getEdgesCount());
+
+        friendGraph.addFriend(1L, ids.get(1));
+        friendGraph.addFriend(1L, ids.get(1));
+        assertArrayEquals(new long[]{ids.get(0), ids.get(1), ids.get(2)}, friendGraph.getFriendsIds(1L));
+        assertArrayEquals(new long[]{ids.get(0), ids.get(2)}, friendGraph.getCommonFriendsIds(1L, ids.get(1)));
+
+        friendGraph.removeFriend(1L, ids.get(0));
+        assertArrayEquals(new long[]{ids.get(2)}, friendGraph.getCommonFriendsIds(1L, ids.get(1)));
+        assertEquals(4, friendGraph.getEdgesCount());
+        assertTrue(friendGraph.getHeapBytesPerEdge() > 0);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetCommonFriends() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            User user = User.of(
+                    0L,
+                    "Friend " + i,
+                    "friend" + i + "@mail.com",
+                    "friend" + i,
+                    LocalDate.of(1990, 1, 1)
+            );
+            ids.add(userDbStorage.addUser(user).getId());
+        }
+        long otherId = ids.getFirst();
+        for (Long friendId : ids.subList(1, 4)) {
+            userDbStorage.addFriend(1L, friendId);
+            userDbStorage.addFriend(otherId, friendId);
+        }
+        friendGraph.load();
+
+        List<User> firstPage = userDbStorage.getCommonFriends(1L, otherId, 0L, 2);
+        assertEquals(List.of(ids.get(1), ids.get(2)), firstPage.stream().map(User::getId).toList());
+        List<User> secondPage = userDbStorage.getCommonFriends(1L, otherId, ids.get(2), 2);
+        assertEquals(List.of(ids.get(3)), secondPage.stream().map(User::getId).toList());
+        assertTrue(userDbStorage.getCommonFriends(1L, ids.get(1), 0L, 10).isEmpty());
+
+        assertArrayEquals(new long[]{ids.get(1), ids.get(2)}, friendGraph.getCommonFriendsIds(1L, otherId, 0L, 2));
+        assertArrayEquals(new long[]{ids.get(3)}, friendGraph.getCommonFriendsIds(1L, otherId, ids.get(2), 2));
+        assertEquals(0, friendGraph.getCommonFriendsIds(1L, otherId, ids.get(3), 2).length);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetFriendSuggestions() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            User user = User.of(
+                    0L,
+                    "Friend " + i,
+                    "friend" + i + "@mail.com",
+                    "friend" + i,
+                    LocalDate.of(1990, 1, 1)
+            );
+            ids.add(userDbStorage.addUser(user).getId());
+        }
+        // user 1 -> a, b; a -> c, d, 1; b -> d
+        long a = ids.get(0);
+        long b = ids.get(1);
+        long c = ids.get(2);
+        long d = ids.get(3);
+        userDbStorage.addFriend(1L, a);
+        userDbStorage.addFriend(1L, b);
+        userDbStorage.addFriend(a, c);
+        userDbStorage.addFriend(a, d);
+        userDbStorage.addFriend(a, 1L);
+        userDbStorage.addFriend(b, d);
+        friendGraph.load();
+
+        List<User> suggestions = userDbStorage.getFriendSuggestions(1L, 10);
+        assertEquals(List.of(d, c), suggestions.stream().map(User::getId).toList());
+
+        List<FriendGraph.Suggestion> graphSuggestions = friendGraph.getFriendSuggestions(1L, 10, 100);
+        assertEquals(List.of(new FriendGraph.Suggestion(d, 2), new FriendGraph.Suggestion(c, 1)), graphSuggestions);
+        assertEquals(List.of(new FriendGraph.Suggestion(d, 2)), friendGraph.getFriendSuggestions(1L, 1, 100));
+        // budget covers only user 1 itself and c among the friends of a
+        assertEquals(List.of(new FriendGraph.Suggestion(c, 1)), friendGraph.getFriendSuggestions(1L, 10, 2));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFindFriendPath() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            User user = User.of(
+                    0L,
+                    "Friend " + i,
+                    "friend" + i + "@mail.com",
+                    "friend" + i,
+                    LocalDate.of(1990, 1, 1)
+            );
+            ids.add(userDbStorage.addUser(user).getId());
+        }
+        // 1 -> a -> b -> c and 1 -> d -> c
+        long a = ids.get(0);
+        long b = ids.get(1);
+        long c = ids.get(2);
+        long d = ids.get(3);
+        userDbStorage.addFriend(1L, a);
+        userDbStorage.addFriend(a, b);
+        userDbStorage.addFriend(b, c);
+        userDbStorage.addFriend(1L, d);
+        userDbStorage.addFriend(d, c);
+        friendGraph.load();
+
+        assertArrayEquals(new long[]{b, d}, friendGraph.getFollowersIds(c));
+        assertArrayEquals(new long[]{1L, d, c}, friendGraph.findPath(1L, c, 6, 1000));
+        assertArrayEquals(new long[]{1L, a, b}, friendGraph.findPath(1L, b, 6, 1000));
+        assertEquals(0, friendGraph.findPath(1L, c, 1, 1000).length);
+        assertEquals(0, friendGraph.findPath(c, 1L, 6, 1000).length);
+        // search budget exceeded is not reported as a missing path
+        assertThrows(SearchLimitExceededException.class, () -> friendGraph.findPath(1L, c, 6, 1));
+
+        friendGraph.removeFriend(d, c);
+        assertArrayEquals(new long[]{b}, friendGraph.getFollowersIds(c));
+        assertArrayEquals(new long[]{1L, a, b, c}, friendGraph.findPath(1L, c, 6, 1000));
+        assertEquals(0, friendGraph.findPath(1L, c, 2, 1000).length);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testIdempotentFriendAndLikeWrites() {
+        User user = User.of(
+                0L,
+                "User name 2",
+                "Email2@mail.com",
+                "qwerty2",
+                LocalDate.of(1991, 1, 1)
+        );
+        User aUser = userDbStorage.addUser(user);
+
+        assertTrue(userDbStorage.addFriend(1L, aUser.getId()));
+        assertFalse(userDbStorage.addFriend(1L, aUser.getId()));
+        assertEquals(1, userDbStorage.getAllFriendsById(1L).size());
+        assertTrue(userDbStorage.removeFriend(1L, aUser.getId()));
+        assertFalse(userDbStorage.removeFriend(1L, aUser.getId()));
+
+        assertTrue(filmDbStorage.addLike(1L, 1L));
+        assertFalse(filmDbStorage.addLike(1L, 1L));
+        assertEquals(1L, filmDbStorage.getFilmsLikesCounts().get(1L));
+        assertEquals(1L, filmDbStorage.getTopFilms(1).getFirst().getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetFriendsIdsByUsersIds() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User user = User.of(
+                    0L,
+                    "Friend " + i,
+                    "friend" + i + "@mail.com",
+                    "friend" + i,
+                    LocalDate.of(1990, 1, 1)
+            );
+            ids.add(userDbStorage.addUser(user).getId());
+        }
+        userDbStorage.addFriend(1L, ids.get(2));
+        userDbStorage.addFriend(1L, ids.get(0));
+        userDbStorage.addFriend(ids.get(0), ids.get(2));
+
+        Map<Long, List<Long>> friendsIds = userDbStorage.getFriendsIdsByUsersIds(List.of(1L, ids.get(0), ids.get(1)));
+        assertEquals(List.of(ids.get(0), ids.get(2)), friendsIds.get(1L));
+        assertEquals(List.of(ids.get(2)), friendsIds.get(ids.get(0)));
+        assertFalse(friendsIds.containsKey(ids.get(1)));
+        assertTrue(userDbStorage.getFriendsIdsByUsersIds(List.of()).isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testCachingFilmStorage() {
+        FilmStorage delegate = mock(FilmStorage.class, delegatesTo(filmDbStorage));
+        CachingFilmStorage cachingFilmStorage = new CachingFilmStorage(delegate, 100, Duration.ofMinutes(1));
+
+        // loaded once, then served from the cache
+        Film film = cachingFilmStorage.getFilmById(1L);
+        assertSame(film, cachingFilmStorage.getFilmById(1L));
+        verify(delegate, times(1)).getFilmById(1L);
+        assertEquals(1L, cachingFilmStorage.getCache().stats().hitCount());
+
+        cachingFilmStorage.updateFilm(Film.of(1L, "New name", film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), film.getGenres(), film.getMpa()));
+        assertNull(cachingFilmStorage.getCache().getIfPresent(1L));
+        assertEquals("New name", cachingFilmStorage.getFilmById(1L).getName());
+
+        verify(delegate, times(2)).getFilmById(1L);
+
+        // film 1 is cached, film 2 exists only in the DB, film 100 does not exist
+        filmDbStorage.addFilm(Film.of(0L, "Film 2", "Description 2", LocalDate.of(2001, 1, 1), 100,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>()), MpaRating.of(1, "G")));
+        cachingFilmStorage.getFilmById(1L);
+        assertEquals(Set.of(1L, 2L), cachingFilmStorage.getExistingFilmsIds(List.of(1L, 2L, 100L)));
+        verify(delegate).getExistingFilmsIds(List.of(2L, 100L));
+        assertEquals(Set.of(1L), cachingFilmStorage.getExistingFilmsIds(List.of(1L)));
+        verify(delegate, never()).getExistingFilmsIds(List.of(1L));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testCachingUserStorage() {
+        CachingUserStorage cachingUserStorage = new CachingUserStorage(userDbStorage, 100, Duration.ofMinutes(1),
+                100, Duration.ofMinutes(1));
+
+        assertEquals("User name", cachingUserStorage.getUserById(1L).getName());
+        assertSame(cachingUserStorage.getUserById(1L), cachingUserStorage.getUserById(1L));
+        assertThrows(NotFoundException.class, () -> cachingUserStorage.getUserById(2L));
+        assertEquals(Set.of(1L), cachingUserStorage.getExistingUsersIds(List.of(1L, 2L)));
+        assertNotNull(cachingUserStorage.getMissingCache().getIfPresent(2L));
+
+        User user = User.of(
+                0L,
+                "User name 2",
+                "Email2@mail.com",
+                "qwerty2",
+                LocalDate.of(1991, 1, 1)
+        );
+        User addedUser = cachingUserStorage.addUser(user);
+        assertEquals(2L, addedUser.getId());
+        assertNull(cachingUserStorage.getMissingCache().getIfPresent(2L));
+        assertEquals(Set.of(1L, 2L), cachingUserStorage.getExistingUsersIds(List.of(1L, 2L)));
+
+        cachingUserStorage.updateUser(User.of(1L, "New name", "Email@mail.com", "qwerty",
+                LocalDate.of(1990, 12, 12)));
+        assertEquals("New name", cachingUserStorage.getUserById(1L).getName());
+        assertTrue(cachingUserStorage.getCache().stats().hitCount() > 0);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFilmRecommendations() {
+        for (int i = 2; i <= 4; i++) {
+            userDbStorage.addUser(User.of(0L, "User " + i, "user" + i + "@mail.com", "user" + i,
+                    LocalDate.of(1990, 1, 1)));
+            filmDbStorage.addFilm(Film.of(0L, "Film " + i, "Description " + i, LocalDate.of(2001, 1, 1), 100,
+                    Collections.unmodifiableSequencedSet(new LinkedHashSet<>()), MpaRating.of(1, "G")));
+        }
+        filmDbStorage.addLike(1L, 1L);
+        filmDbStorage.addLike(2L, 1L);
+        filmDbStorage.addLike(1L, 2L);
+        filmDbStorage.addLike(2L, 2L);
+        filmDbStorage.addLike(3L, 2L);
+        filmDbStorage.addLike(1L, 3L);
+        filmDbStorage.addLike(4L, 3L);
+        filmDbStorage.addLike(4L, 4L);
+        filmRecommender.load();
+
+        // similarity with user 2 is 2/3, with user 3 - 1/3, user 4 has no common likes
+        List<FilmRecommender.Recommendation> recommendations = filmRecommender.getRecommendations(1L, 10, 10);
+        assertEquals(List.of(3L, 4L), recommendations.stream().map(FilmRecommender.Recommendation::filmId).toList());
+        assertEquals(2.0 / 3.0, recommendations.get(0).score(), 1e-9);
+        assertEquals(List.of(3L), filmRecommender.getRecommendations(1L, 1, 10).stream()
+                .map(FilmRecommender.Recommendation::filmId)
+                .toList());
+
+        // likes of user 2 become a subset of likes of user 1, only user 3 remains a useful neighbour
+        filmRecommender.addLike(1L, 3L);
+        assertEquals(3, filmRecommender.getLikesCount(1L));
+        assertEquals(List.of(4L), filmRecommender.getRecommendations(1L, 10, 10).stream()
+                .map(FilmRecommender.Recommendation::filmId)
+                .toList());
+
+        filmRecommender.removeLike(4L, 4L);
+        assertEquals(0, filmRecommender.getLikesCount(4L));
+        assertTrue(filmRecommender.getRecommendations(4L, 10, 10).isEmpty());
+
+        // users 1 and 2 are found through the likers of film 2, user 3 has no common likes
+        filmRecommender.addLike(4L, 2L);
+        assertArrayEquals(new long[]{2L}, filmRecommender.getLikedFilmsIds(4L));
+        assertEquals(List.of(1L, 3L), filmRecommender.getRecommendations(4L, 10, 10).stream()
+                .map(FilmRecommender.Recommendation::filmId)
+                .toList());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSimilarFilmsIndex() {
+        for (int i = 2; i <= 3; i++) {
+            userDbStorage.addUser(User.of(0L, "User " + i, "user" + i + "@mail.com", "user" + i,
+                    LocalDate.of(1990, 1, 1)));
+        }
+        for (int i = 2; i <= 4; i++) {
+            filmDbStorage.addFilm(Film.of(0L, "Film " + i, "Description " + i, LocalDate.of(2001, 1, 1), 100,
+                    Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(Genre.of(1, "Комедия")))),
+                    MpaRating.of(1, "G")));
+        }
+        filmDbStorage.addLike(1L, 1L);
+        filmDbStorage.addLike(2L, 1L);
+        filmDbStorage.addLike(3L, 1L);
+        filmDbStorage.addLike(2L, 2L);
+        filmDbStorage.addLike(3L, 2L);
+        filmDbStorage.addLike(1L, 3L);
+        filmDbStorage.addLike(4L, 3L);
+        filmRecommender.load();
+        similarFilmsIndex.rebuild();
+
+        // films 2 and 3 have two common likes and a common genre, film 1 has no genres
+        assertEquals(List.of(3L, 1L), similarFilmsIndex.getSimilarFilmsIds(2L, 10));
+        assertEquals(List.of(2L, 3L, 4L), similarFilmsIndex.getSimilarFilmsIds(1L, 10));
+        assertEquals(List.of(2L), similarFilmsIndex.getSimilarFilmsIds(1L, 1));
+        assertEquals(List.of(1L), similarFilmsIndex.getSimilarFilmsIds(4L, 10));
+
+        // user 2 likes film 4: films 2 and 3 get a common like with film 4
+        filmRecommender.addLike(2L, 4L);
+        similarFilmsIndex.updateCoLikes(FilmLikesChangedEvent.added(FilmLike.of(4L, 2L)));
+        assertEquals(List.of(2L, 3L, 1L), similarFilmsIndex.getSimilarFilmsIds(4L, 10));
+        assertEquals(List.of(3L, 4L, 1L), similarFilmsIndex.getSimilarFilmsIds(2L, 10));
+
+        similarFilmsIndex.updateCoLikes(FilmLikesChangedEvent.removed(FilmLike.of(4L, 2L)));
+        assertEquals(List.of(1L), similarFilmsIndex.getSimilarFilmsIds(4L, 10));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSimilarFilmsIndexCountsConsecutiveLikesOnce() throws InterruptedException {
+        for (int i = 2; i <= 4; i++) {
+            filmDbStorage.addFilm(Film.of(0L, "Film " + i, "Description " + i, LocalDate.of(2001, 1, 1), 100,
+                    Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(Genre.of(1, "Комедия")))),
+                    MpaRating.of(1, "G")));
+        }
+        filmRecommender.load();
+        similarFilmsIndex.rebuild();
+
+        // films 3 and 2 have one common like
+        filmRecommender.addLike(2L, 2L);
+        similarFilmsIndex.updateCoLikes(FilmLikesChangedEvent.added(FilmLike.of(2L, 2L)));
+        filmRecommender.addLike(2L, 3L);
+        similarFilmsIndex.updateCoLikes(FilmLikesChangedEvent.added(FilmLike.of(3L, 2L)));
+
+        // user 1 likes films 3 and 4 in a row, updates run after FilmRecommender has seen both likes
+        filmRecommender.addLike(1L, 3L);
+        similarFilmsIndex.onFilmLikesChanged(FilmLikesChangedEvent.added(FilmLike.of(3L, 1L)));
+        filmRecommender.addLike(1L, 4L);
+        similarFilmsIndex.onFilmLikesChanged(FilmLikesChangedEvent.added(FilmLike.of(4L, 1L)));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (similarFilmsIndex.getSimilarFilmsIds(4L, 10).isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // films 2 and 4 both have one common like with film 3, ties are ordered by id
+        assertEquals(List.of(3L), similarFilmsIndex.getSimilarFilmsIds(4L, 10));
+        assertEquals(List.of(2L, 4L), similarFilmsIndex.getSimilarFilmsIds(3L, 10));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testOperationMetricsAspect() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(userDbStorage);
+        proxyFactory.addAspect(new OperationMetricsAspect(meterRegistry));
+        UserStorage userStorage = proxyFactory.getProxy();
+
+        assertEquals(1, userStorage.getAllUsers().size());
+        userStorage.getAllUsers();
+        assertThrows(NotFoundException.class, () -> userStorage.getUserById(99L));
+
+        assertEquals(2L, meterRegistry.get("filmorate.operation")
+                .tags("layer", "storage", "class", "UserDbStorage", "method", "getAllUsers")
+                .timer()
+                .count());
+        assertEquals(2.0, meterRegistry.get("filmorate.operation.rows")
+                .tag("method", "getAllUsers")
+                .summary()
+                .totalAmount());
+        assertEquals(1.0, meterRegistry.get("filmorate.operation.errors")
+                .tags("method", "getUserById", "exception", "NotFoundException")
+                .counter()
+                .count());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSqlProfiler() {
+        SqlProfiler sqlProfiler = new SqlProfiler(jdbcTemplate, Duration.ZERO, Duration.ofMinutes(1), 100);
+        JdbcOperations profilingJdbc = sqlProfiler.wrap(jdbcTemplate);
+        UserDbStorage profiledStorage = new UserDbStorage(profilingJdbc, new UserRowMapper(), eventPublisher);
+        userDbStorage.addUser(User.of(0L, "User name 2", "Email2@mail.com", "qwerty2", LocalDate.of(1991, 1, 1)));
+
+        assertEquals(1, profiledStorage.getUsersByIdSet(Set.of(1L)).size());
+        assertEquals(2, profiledStorage.getUsersByIdSet(Set.of(1L, 2L)).size());
+        List<User> streamedUsers = new ArrayList<>();
+        profiledStorage.streamAllUsers(streamedUsers::add);
+        assertEquals(2, streamedUsers.size());
+
+        // queries with a different number of IN parameters share one fingerprint
+        List<SqlProfiler.StatementReport> reports = sqlProfiler.getTopStatements(10);
+        assertEquals(2, reports.size());
+        SqlProfiler.StatementReport byIds = reports.stream()
+                .filter(report -> report.fingerprint().contains("IN (?+)"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(2L, byIds.calls());
+        assertEquals(3L, byIds.rows());
+        SqlProfiler.StatementReport streamed = reports.stream()
+                .filter(report -> report.fingerprint().equals("SELECT * FROM users ORDER BY id"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(1L, streamed.calls());
+        assertEquals(2L, streamed.rows());
+
+        sqlProfiler.reset();
+        assertTrue(sqlProfiler.getTopStatements(10).isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testJfrOperationEvents() throws Exception {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(userDbStorage);
+        proxyFactory.addAspect(new JfrOperationAspect());
+        UserStorage userStorage = proxyFactory.getProxy();
+
+        Path file = Files.createTempFile("filmorate", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(OperationEvent.class);
+            recording.start();
+            userStorage.getAllUsers();
+            assertThrows(NotFoundException.class, () -> userStorage.getUserById(99L));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> OperationEvent.NAME.equals(event.getEventType().getName()))
+                .toList();
+        Files.delete(file);
+        assertEquals(2, events.size());
+        RecordedEvent allUsers = events.stream()
+                .filter(event -> "getAllUsers".equals(event.getString("method")))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("UserDbStorage", allUsers.getString("className"));
+        assertEquals(1, allUsers.getInt("rows"));
+        assertFalse(allUsers.getBoolean("failed"));
+        RecordedEvent userById = events.stream()
+                .filter(event -> "getUserById".equals(event.getString("method")))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(99L, userById.getLong("entityId"));
+        assertTrue(userById.getBoolean("failed"));
+    }
 }